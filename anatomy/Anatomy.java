@@ -1,16 +1,16 @@
 package anatomy;
 
-import java.sql.ResultSet;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.Random;
 
-import sqlwrapper.QueryResult;
 import sqlwrapper.SqLiteSQLWrapper;
 import anonymizer.AnonRecordTable;
 import anonymizer.Anonymizer;
 import anonymizer.Configuration;
 import anonymizer.EquivalenceTable;
+import anonymizer.MemAnonRecordTable;
+import anonymizer.MemEquivalenceTable;
 
 /**
  * Implementation of the Anatomy anonymization algorithm. For details on Anatomy, please refer to 
@@ -65,7 +65,9 @@ public class Anatomy extends Anonymizer {
 		if(conf.sensitiveAtts.length != 1) {
 			throw new Exception("Anatomy: Set 1 (and only 1) sensitive attribute!!");
 		}
-		sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		if(conf.storage == Configuration.STORAGE_SQLITE) {
+			sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		}
 		
 		//create tables
 		eqTable = createEquivalenceTable("eq_init"); 
@@ -86,6 +88,9 @@ public class Anatomy extends Anonymizer {
 	 * @return A new equivalence table
 	 */
 	protected EquivalenceTable createEquivalenceTable(String tableName) {
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemEquivalenceTable(conf.qidAtts, tableName);
+		}
 		return new EquivalenceTable(conf.qidAtts, tableName);
 	}
 	
@@ -102,45 +107,20 @@ public class Anatomy extends Anonymizer {
 		}
 		Integer[] sensAtts = new Integer[1];
 		sensAtts[0] = conf.sensitiveAtts[0].index;
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemAnonRecordTable(qiAtts, sensAtts, tableName);
+		}
 		return new AnonRecordTable(qiAtts, sensAtts, tableName);
 	}
 	
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., before any generalization)
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected long insertTupleToEquivalenceTable(String[] vals) throws Exception{
-		return eqTable.insertTuple(vals);
-	}
-	
-	/**
-	 * Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
-	 * @param eid Equivalence id of the equivalence to which the tuple belongs
-	 * @throws Exception
-	 */
-	protected void insertTupleToAnonTable(String[] vals, long eid) throws Exception{
-		//parse qi-attribute values
-		double[] qiVals = new double[conf.qidAtts.length];
-		for(int i = 0; i < conf.qidAtts.length; i++) {
-			String attVal = vals[conf.qidAtts[i].index];
-			if(conf.qidAtts[i].catDomMapping != null) {
-				qiVals[i] = conf.qidAtts[i].catDomMapping.get(attVal);
-			} else {
-				qiVals[i] = Double.parseDouble(attVal);
-			}
-		}
-		//parse sensitive attribute value
-		String sensitiveValue = vals[conf.sensitiveAtts[0].index];
-		double[] sensVals = new double[1];
-		if(conf.sensitiveAtts[0].catDomMapping != null) {
-			sensVals[0] = conf.sensitiveAtts[0].catDomMapping.get(sensitiveValue);
-		} else {
-			sensVals[0] = Double.parseDouble(sensitiveValue);
-		}
-		anonTable.insert(eid, qiVals, sensVals);
+	protected long insertTupleToEquivalenceTable(double[] qiVals) throws Exception{
+		return eqTable.insertTuple(qiVals);
 	}
 	
 	/**
@@ -156,16 +136,11 @@ public class Anatomy extends Anonymizer {
 		
 		//get counts for each sensitive attribute value
 		LinkedList<AttValueCount> sensCountList = new LinkedList<AttValueCount>();
-		String count_SQL = "SELECT ATT_" + conf.sensitiveAtts[0].index + ", COUNT(*)"
-			+ " FROM " + anonTable.getName()
-			+ " GROUP BY ATT_" + conf.sensitiveAtts[0].index
-			+ " ORDER BY COUNT(*)";
-		QueryResult result = sqlwrapper.executeQuery(count_SQL);
+		double[][] valueCounts = anonTable.getValueCounts(conf.sensitiveAtts[0].index);
 		double total = 0;
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			sensCountList.add(new AttValueCount(rs.getDouble(1), rs.getInt(2)));
-			total += rs.getInt(2);
+		for(int i = 0; i < valueCounts.length; i++) {
+			sensCountList.add(new AttValueCount(valueCounts[i][0], (int) valueCounts[i][1]));
+			total += valueCounts[i][1];
 		}
 		//convert to array and sort
 		AttValueCount[] sensCounts = sensCountList.toArray(new AttValueCount[0]);
@@ -205,14 +180,7 @@ public class Anatomy extends Anonymizer {
 				
 				//select a random tuple with value sensVal
 				int index = rand.nextInt(sensCounts[i].getCount());
-				String selTuple_SQL = "SELECT RID FROM " + anonTable.getName()
-					+ " WHERE ATT_" + conf.sensitiveAtts[0].index + " = " + sensVal
-					+ " LIMIT 1 OFFSET " + index;
-				long rid = -1;
-				result = sqlwrapper.executeQuery(selTuple_SQL);
-				if(result.hasNext()) {
-					rid = ((ResultSet) result.next()).getLong(1);
-				}
+				long rid = anonTable.getRIDWithValue(conf.sensitiveAtts[0].index, sensVal, index);
 				
 				//insert the tuple to anReady with EID = eid
 				anReady.cutRecord(anonTable, rid, eid);
@@ -226,25 +194,13 @@ public class Anatomy extends Anonymizer {
 				double sensVal = sensCounts[i].getValue();
 				
 				//select the only tuple with value sensVal
-				String selTuple_SQL = "SELECT RID FROM " + anonTable.getName()
-					+ " WHERE ATT_" + conf.sensitiveAtts[0].index + " = " + sensVal;
-				long rid = -1;
-				result = sqlwrapper.executeQuery(selTuple_SQL);
-				if(result.hasNext()) {
-					rid = ((ResultSet) result.next()).getLong(1);
-				}
+				long rid = anonTable.getRIDWithValue(conf.sensitiveAtts[0].index, sensVal, 0);
 				
 				//randomly select an equivalence that does not contain sensVal
-				//get the count first
-				selTuple_SQL = "SELECT EID FROM " + anReady.getName()
-					+ " GROUP BY EID"
-					+ " HAVING COUNT(ATT_" + conf.sensitiveAtts[0].index + " = " + sensVal + ") < 1";
-				String selCount_SQL = "SELECT COUNT(*) FROM (" + selTuple_SQL + ") AS T";
-				int count = ((ResultSet) sqlwrapper.executeQuery(selCount_SQL).next()).getInt(1);
-				int index = rand.nextInt(count);
+				long[] eids = anReady.getEIDsWithout(conf.sensitiveAtts[0].index, sensVal);
+				int index = rand.nextInt(eids.length);
 				//select the corresponding eid
-				selTuple_SQL = selTuple_SQL	+ " LIMIT 1 OFFSET " + index;
-				long eid = ((ResultSet) sqlwrapper.executeQuery(selTuple_SQL).next()).getLong(1);
+				long eid = eids[index];
 				
 				//insert this tuple to that equivalence
 				anReady.cutRecord(anonTable, rid, eid);
@@ -252,8 +208,8 @@ public class Anatomy extends Anonymizer {
 		}
 		
 		//finished, overwrite the initial tables with the results
-		anReady.drop();
-		eqReady.drop();
+		anonTable.drop();
+		eqTable.drop();
 		anonTable = anReady;
 		eqTable = eqReady;
 	}
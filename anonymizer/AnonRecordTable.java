@@ -1,12 +1,16 @@
 package anonymizer;
 
+import java.io.Closeable;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.LinkedList;
 import java.util.ListIterator;
 
+import sqlwrapper.QueryException;
 import sqlwrapper.QueryResult;
 import sqlwrapper.SQLWrapper;
 import sqlwrapper.SqLiteSQLWrapper;
@@ -25,13 +29,21 @@ import sqlwrapper.SqLiteSQLWrapper;
  */
 public class AnonRecordTable {
 	/** Indices of quasi-identifier attributes*/
-	private Integer[] qidIndices;
+	protected Integer[] qidIndices;
 	/** Indices of sensitive attributes*/
-	private Integer[] sensIndices;
+	protected Integer[] sensIndices;
 	/** Name of the table*/
-	private String tableName;
+	protected String tableName;
 	/** SQL connection/querying object*/
 	private SQLWrapper sqlwrapper;
+	/** Largest record ID on the table (-1 if it has to be read from the table)*/
+	private long maxRID = -1;
+	/** Precompiled insertion statement (created upon the first insertion)*/
+	private PreparedStatement insertStatement = null;
+	/** Number of insertions executed as a single batch (0 if not bulk loading)*/
+	private int batchSize = 0;
+	/** Number of insertions waiting in the current batch*/
+	private int batchCount = 0;
 	
 	/**
 	 * Class constructor
@@ -47,6 +59,22 @@ public class AnonRecordTable {
 		createTable();
 	}
 	
+	/**
+	 * Class constructor for subclasses that do not store the records 
+	 * in the embedded database (no table is created)
+	 * @param qidIndices Indices of quasi-identifier attributes
+	 * @param sensIndices Indices of sensitive attributes
+	 * @param tableName Name of the table
+	 * @param sqlwrapper SQL connection/querying object (null if not needed)
+	 */
+	protected AnonRecordTable(Integer[] qidIndices, Integer[] sensIndices, String tableName,
+			SQLWrapper sqlwrapper) {
+		this.qidIndices = qidIndices;
+		this.sensIndices = sensIndices;
+		this.tableName = tableName;
+		this.sqlwrapper = sqlwrapper;
+	}
+	
 //	/**
 //	 * Class constructor (call only if the table is created before)
 //	 * @param name Name of the table to be fetched
@@ -67,7 +95,9 @@ public class AnonRecordTable {
 		//first, check if table exists
 		String select_SQL = "SELECT NAME FROM SQLITE_MASTER WHERE NAME = '" + tableName + "'";
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		if(result.hasNext()) { // if the table exists, drop table
+		boolean exists = result.hasNext();
+		result.close(); //release SQLITE_MASTER, otherwise tables cannot be dropped
+		if(exists) { // if the table exists, drop table
 			String drop_SQL = "DROP TABLE " + tableName;
 			sqlwrapper.execute(drop_SQL);
 		}
@@ -109,13 +139,290 @@ public class AnonRecordTable {
 			" WHERE EID = " + Long.toString(eid);
 		//execute query
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		int size = 0;
 		if(result.hasNext()) {
-			return ((ResultSet) result.next()).getInt(1);
-		} else {
-			return 0;
+			size = ((ResultSet) result.next()).getInt(1);
+		}
+		result.close(); //release the table (open statements block later drops)
+		return size;
+	}
+	
+	/**
+	 * Get the number of AnonRecords in the table
+	 * @return Number of records
+	 */
+	public int size() throws SQLException{
+		String select_SQL = "SELECT COUNT(*) FROM " + tableName;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		int size = 0;
+		if(result.hasNext()) {
+			size = ((ResultSet) result.next()).getInt(1);
+		}
+		result.close();
+		return size;
+	}
+	
+	/**
+	 * Get the ID of the equivalence that the record with ID rid is generalized to
+	 * @param rid Record ID
+	 * @return Equivalence ID of the record
+	 */
+	public long getEID(long rid) throws SQLException{
+		String select_SQL = "SELECT EID FROM " + tableName + " WHERE RID = " + rid;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		long eid = ((ResultSet) result.next()).getLong(1);
+		result.close();
+		return eid;
+	}
+	
+	/**
+	 * Get the quasi-identifier attribute values of the record with ID rid
+	 * @param rid Record ID
+	 * @return Quasi-identifier attribute values (one for each qi-attribute)
+	 */
+	public double[] getQIValues(long rid) throws SQLException{
+		String select_SQL = "SELECT * FROM " + tableName + " WHERE RID = " + rid;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		ResultSet rs = (ResultSet) result.next();
+		double[] qiVals = new double[qidIndices.length];
+		for(int i = 0; i < qiVals.length; i++) {
+			qiVals[i] = rs.getDouble("ATT_" + qidIndices[i]);
+		}
+		result.close();
+		return qiVals;
+	}
+	
+	/**
+	 * Get the quasi-identifier attribute values of all AnonRecords generalized 
+	 * to the Equivalence with ID eid
+	 * @param eid Equivalence ID
+	 * @return Quasi-identifier attribute values (one row per record, 
+	 * one column for each qi-attribute)
+	 */
+	public double[][] getEquivalenceQIValues(long eid) throws SQLException{
+		String select_SQL = "SELECT * FROM " + tableName + " WHERE EID = " + eid;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<double[]> rows = new LinkedList<double[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			double[] qiVals = new double[qidIndices.length];
+			for(int i = 0; i < qiVals.length; i++) {
+				qiVals[i] = rs.getDouble("ATT_" + qidIndices[i]);
+			}
+			rows.add(qiVals);
+		}
+		return rows.toArray(new double[0][]);
+	}
+	
+	/**
+	 * Get the record IDs and quasi-identifier attribute values of all AnonRecords 
+	 * generalized to the Equivalence with ID eid
+	 * @param eid Equivalence ID
+	 * @return One row per record in ascending order of RIDs (first column is the RID, 
+	 * followed by one column for each qi-attribute)
+	 */
+	public double[][] getEquivalenceRecords(long eid) throws SQLException{
+		String select_SQL = "SELECT * FROM " + tableName + " WHERE EID = " + eid 
+			+ " ORDER BY RID";
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<double[]> rows = new LinkedList<double[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			double[] row = new double[qidIndices.length + 1];
+			row[0] = rs.getLong("RID");
+			for(int i = 0; i < qidIndices.length; i++) {
+				row[i+1] = rs.getDouble("ATT_" + qidIndices[i]);
+			}
+			rows.add(row);
+		}
+		return rows.toArray(new double[0][]);
+	}
+	
+	/**
+	 * Iterator over the records of the table, which should be closed once the
+	 * iteration is over (or abandoned)
+	 */
+	public static abstract class RecordIterator implements Iterator<double[]>, Closeable {
+		/**
+		 * Releases the resources held by the iterator (e.g., the statement)
+		 */
+		public void close() {
+		}
+		
+		public void remove() {
+			throw new UnsupportedOperationException();
 		}
 	}
 	
+	/**
+	 * Get all records in ascending order of RIDs. Records are read from the database
+	 * in pages of RIDs, therefore the table should not be modified during the iteration.
+	 * @return Iterator over the records (first column is the RID, second column is 
+	 * the EID, followed by one column for each qi-attribute)
+	 */
+	public RecordIterator getRecords() throws SQLException{
+		String select_SQL = "SELECT * FROM " + tableName;
+		final QueryResult result = sqlwrapper.executeKeysetQuery(select_SQL, "RID");
+		return new RecordIterator() {
+			public boolean hasNext() {
+				return result.hasNext();
+			}
+			
+			public double[] next() {
+				ResultSet rs = (ResultSet) result.next();
+				double[] row = new double[qidIndices.length + 2];
+				try {
+					row[0] = rs.getLong("RID");
+					row[1] = rs.getLong("EID");
+					for(int i = 0; i < qidIndices.length; i++) {
+						row[i+2] = rs.getDouble("ATT_" + qidIndices[i]);
+					}
+				} catch(SQLException e) { //Iterator.next() cannot throw checked exceptions
+					throw new QueryException(e);
+				}
+				return row;
+			}
+			
+			public void close() {
+				result.close();
+			}
+		};
+	}
+	
+	/**
+	 * Get the distinct values of an attribute, together with their counts, over the
+	 * AnonRecords generalized to the Equivalence with ID eid
+	 * @param eid Equivalence ID
+	 * @param att An attribute index
+	 * @return (value, count) pairs in ascending order of values
+	 */
+	public double[][] getValueCounts(long eid, int att) throws SQLException{
+		String select_SQL = "SELECT ATT_" + att + ", COUNT(*)"
+			+ " FROM " + tableName
+			+ " WHERE EID = " + eid
+			+ " GROUP BY ATT_" + att 
+			+ " ORDER BY ATT_" + att;
+		return getValueCounts(select_SQL);
+	}
+	
+	/**
+	 * Get the distinct values of an attribute, together with their counts, over
+	 * the entire table
+	 * @param att An attribute index
+	 * @return (value, count) pairs in ascending order of values
+	 */
+	public double[][] getValueCounts(int att) throws SQLException{
+		String select_SQL = "SELECT ATT_" + att + ", COUNT(*)"
+			+ " FROM " + tableName
+			+ " GROUP BY ATT_" + att 
+			+ " ORDER BY ATT_" + att;
+		return getValueCounts(select_SQL);
+	}
+	
+	/**
+	 * Collects the (value, count) pairs returned by the query
+	 * @param select_SQL A query that selects a value and a count
+	 * @return (value, count) pairs
+	 */
+	private double[][] getValueCounts(String select_SQL) throws SQLException{
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<double[]> counts = new LinkedList<double[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			double[] entry = new double[2];
+			entry[0] = rs.getDouble(1); //first element will be the value
+			entry[1] = rs.getInt(2); //second will be the count
+			counts.add(entry);
+		}
+		return counts.toArray(new double[0][]);
+	}
+	
+	/**
+	 * Get the size of every equivalence with a single scan of the table
+	 * @return (EID, size) pairs in ascending order of EIDs
+	 */
+	public long[][] getEquivalenceSizes() throws SQLException{
+		String select_SQL = "SELECT EID, COUNT(*) FROM " + tableName 
+			+ " GROUP BY EID ORDER BY EID";
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<long[]> sizes = new LinkedList<long[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			long[] entry = new long[2];
+			entry[0] = rs.getLong(1); //first element will be the EID
+			entry[1] = rs.getInt(2); //second will be the size
+			sizes.add(entry);
+		}
+		return sizes.toArray(new long[0][]);
+	}
+	
+	/**
+	 * Get the distinct values of an attribute, together with their counts, within every 
+	 * equivalence with a single scan of the table
+	 * @param att An attribute index
+	 * @return (EID, value, count) triples in ascending order of EIDs and values
+	 */
+	public double[][] getEquivalenceValueCounts(int att) throws SQLException{
+		String select_SQL = "SELECT EID, ATT_" + att + ", COUNT(*) FROM " + tableName
+			+ " GROUP BY EID, ATT_" + att 
+			+ " ORDER BY EID, ATT_" + att;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<double[]> counts = new LinkedList<double[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			double[] entry = new double[3];
+			entry[0] = rs.getLong(1); //EID
+			entry[1] = rs.getDouble(2); //value
+			entry[2] = rs.getInt(3); //count
+			counts.add(entry);
+		}
+		return counts.toArray(new double[0][]);
+	}
+	
+	/**
+	 * Get the ID of a record with the specified attribute value
+	 * @param att An attribute index
+	 * @param value Attribute value
+	 * @param offset Number of matching records to skip
+	 * @return Record ID of the (offset+1)^th matching record or -1 if not found
+	 */
+	public long getRIDWithValue(int att, double value, int offset) throws SQLException{
+		String select_SQL = "SELECT RID FROM " + tableName
+			+ " WHERE ATT_" + att + " = " + value
+			+ " LIMIT 1 OFFSET " + offset;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		long rid = -1;
+		if(result.hasNext()) {
+			rid = ((ResultSet) result.next()).getLong(1);
+		}
+		result.close();
+		return rid;
+	}
+	
+	/**
+	 * Get the IDs of equivalences that do not contain any record with the 
+	 * specified attribute value
+	 * @param att An attribute index
+	 * @param value Attribute value
+	 * @return Equivalence IDs in ascending order
+	 */
+	public long[] getEIDsWithout(int att, double value) throws SQLException{
+		String select_SQL = "SELECT EID FROM " + tableName
+			+ " GROUP BY EID"
+			+ " HAVING SUM(ATT_" + att + " = " + value + ") < 1";
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<Long> eids = new LinkedList<Long>();
+		while(result.hasNext()) {
+			eids.add(((ResultSet) result.next()).getLong(1));
+		}
+		long[] retVal = new long[eids.size()];
+		ListIterator<Long> iter = eids.listIterator();
+		for(int i = 0; i < retVal.length; i++) {
+			retVal[i] = iter.next();
+		}
+		return retVal;
+	}
+	
 	/**
 	 * Inserts new AnonRecord to the table (Record ID (RID) assigned automatically)
 	 * @param eid Equivalence ID
@@ -123,27 +430,109 @@ public class AnonRecordTable {
 	 * @param sensVals Sensitive attribute values (if not necessary, pass "new double[0]" as argument
 	 */
 	public void insert(long eid, double[] qiVals, double[] sensVals) throws SQLException{
-		Long rid = new Long(0);
-		//get the largest ID on the table
-		String select_SQL = "SELECT MAX(RID) FROM " + tableName;
-		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		if(result.hasNext()) {
-			rid = ((ResultSet) result.next()).getLong(1);
-			rid++;
+		insert(getMaxRID() + 1, eid, qiVals, sensVals);
+	}
+	
+	/**
+	 * Insert a record with the specified ID (e.g., a record moved from another table)
+	 * @param rid Record ID, should not exist in the table
+	 * @param eid Equivalence ID
+	 * @param qiVals Quasi-identifier attribute values
+	 * @param sensVals Sensitive attribute values
+	 * @throws SQLException
+	 */
+	public void insert(long rid, long eid, double[] qiVals, double[] sensVals) throws SQLException{
+		if(rid > getMaxRID()) {
+			maxRID = rid;
+		}
+		if(insertStatement == null) {
+			String insert_SQL = "INSERT INTO " + tableName + " VALUES (?, ?";
+			for(int i = 0; i < qiVals.length + sensVals.length; i++) {
+				insert_SQL += ", ?";
+			}
+			insert_SQL += ")";
+			insertStatement = sqlwrapper.prepareStatement(insert_SQL);
 		}
 		
-		String insert_SQL = "INSERT INTO " + tableName + " VALUES (" + rid + ", " + eid + ", ";
+		int col = 1;
+		insertStatement.setLong(col++, rid);
+		insertStatement.setLong(col++, eid);
 		for(int i = 0; i < qiVals.length; i++) {
-			insert_SQL += qiVals[i] + ", ";
+			insertStatement.setDouble(col++, qiVals[i]);
 		}
 		for(int i = 0; i < sensVals.length; i++) {
-			insert_SQL += sensVals[i] + ", ";
+			insertStatement.setDouble(col++, sensVals[i]);
+		}
+		//execute update (or defer until the batch is full)
+		if(batchSize > 0) {
+			insertStatement.addBatch();
+			if(++batchCount >= batchSize) {
+				executeBatch();
+			}
+		} else {
+			insertStatement.executeUpdate();
+		}
+	}
+	
+	/**
+	 * Get the largest record ID on the table
+	 * @return Largest RID, 0 if the table is empty
+	 */
+	private long getMaxRID() throws SQLException{
+		if(maxRID < 0) { //get the largest ID on the table, only once
+			maxRID = 0;
+			String select_SQL = "SELECT MAX(RID) FROM " + tableName;
+			QueryResult result = sqlwrapper.executeQuery(select_SQL);
+			if(result.hasNext()) {
+				maxRID = ((ResultSet) result.next()).getLong(1);
+			}
+			result.close();
+		}
+		return maxRID;
+	}
+	
+	/**
+	 * Starts bulk loading: subsequent insertions are executed in batches of the specified
+	 * size and each batch is committed separately
+	 * @param batchSize Number of insertions per batch
+	 */
+	public void beginBulkInsert(int batchSize) {
+		this.batchSize = batchSize;
+		batchCount = 0;
+	}
+	
+	/**
+	 * Executes and commits the remaining insertions of the last batch, and ends bulk loading
+	 */
+	public void endBulkInsert() throws SQLException{
+		if(batchCount > 0) {
+			executeBatch();
+		}
+		batchSize = 0;
+		closeInsertStatement();
+	}
+	
+	/**
+	 * Executes the insertions waiting in the current batch and commits
+	 */
+	private void executeBatch() throws SQLException{
+		insertStatement.executeBatch();
+		sqlwrapper.commit();
+		batchCount = 0;
+	}
+	
+	/**
+	 * Releases the insertion statement (open statements would lock the table)
+	 */
+	private void closeInsertStatement() {
+		if(insertStatement != null) {
+			try {
+				insertStatement.close();
+			} catch(SQLException e) {
+				e.printStackTrace();
+			}
+			insertStatement = null;
 		}
-		//trim the last comma
-		insert_SQL = insert_SQL.substring(0, insert_SQL.length()-2);
-		insert_SQL += ")";
-		//execute update
-		sqlwrapper.execute(insert_SQL);
 	}
 	
 	/**
@@ -155,15 +544,13 @@ public class AnonRecordTable {
 		String select_SQL = "SELECT COUNT(*) FROM " + tableName 
 			+ " GROUP BY EID ORDER BY COUNT(*) ASC";
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		while(result.hasNext()) {
+		boolean isAnonymous = true;
+		if(result.hasNext()) { //only the smallest equivalence is checked
 			Integer min = ((ResultSet) result.next()).getInt(1);
-			if(min > 0 && min < k) {
-				return false;
-			} else {
-				return true;
-			}
+			isAnonymous = !(min > 0 && min < k);
 		}
-		return true; //no equivalences, therefore no records, therefore k-anonymous
+		result.close();
+		return isAnonymous; //no equivalences, therefore no records, therefore k-anonymous
 	}
 	
 	/**
@@ -185,6 +572,7 @@ public class AnonRecordTable {
 			if(min > 0 && min < k) {
 				sumLessThanK += min;
 				if(sumLessThanK > suppThreshold) {
+					result.close();
 					return false; //too many records for suppression, not ready yet
 				}
 			}
@@ -192,6 +580,44 @@ public class AnonRecordTable {
 		return true;
 	}
 	
+	/**
+	 * Lists the equivalences with size less than k (in ascending order of size), 
+	 * if their total size is within the suppression threshold
+	 * @param k Privacy parameter
+	 * @param suppThreshold Suppression threshold (no limit if set to 0)
+	 * @return Empty list if already k-anonymous, List of EIDs of 
+	 * equivalences that should be suppressed if ready for suppression,
+	 * null otherwise. 
+	 */
+	public LinkedList<Long> getSuppressionList(int k, int suppThreshold) throws SQLException{
+		//for all equivalences with less than k generalized tuples,
+		// sumEquivalenceSizes stores their total size
+		int sumEquivalenceSizes = 0;
+		LinkedList<Long> equivalencesToBeSuppressed = new LinkedList<Long>();
+		String select_SQL = "SELECT EID, COUNT(*) FROM " + tableName 
+			+ " GROUP BY EID ORDER BY COUNT(*) ASC";
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			Integer currCount = rs.getInt(2);
+			if(currCount < k) {
+				//add EID to the list
+				equivalencesToBeSuppressed.add(rs.getLong(1));
+				sumEquivalenceSizes += currCount;
+				if(suppThreshold > 0 
+						&& sumEquivalenceSizes > suppThreshold) {
+					result.close();
+					return null; //too many records for suppression, not ready yet
+				}
+			} else { //currCount >= k
+				result.close();
+				return equivalencesToBeSuppressed; //this is only to save time
+				//any tuple with currCount >= k cannot be suppressed
+			}
+		}
+		return equivalencesToBeSuppressed;
+	}
+	
 	/**
 	 * Checks the entropy l-diversity privacy definition
 	 * @param l Privacy parameter
@@ -200,62 +626,7 @@ public class AnonRecordTable {
 	 * @throws SQLException
 	 */
 	public boolean checkLDiversityRequirement(double l, int sensIndex) throws SQLException {
-		String select_SQL = "SELECT COUNT(*), EID FROM " + tableName
-			+ " GROUP BY ATT_" + Integer.toString(sensIndex) + ", EID ORDER BY EID";
-		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		
-		long currEID; //EID of the current equivalence 
-		int currCount; //count for the current sensitive value of the current equivalence
-		long prevEID = Long.MIN_VALUE; //previous EID  value (used to check if EID has changed)
-		ArrayList<Integer> counts = null;
-		double sum = 0;
-		
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			currEID = rs.getLong(2);
-			currCount = rs.getInt(1);
-			
-			//if the EID has changed 
-			// (i)  validate conformity with l-div
-			// (ii) refresh the counts for the next equivalence
-			if(currEID != prevEID) {
-				//before refreshing, check if the condition is satisfied 
-				// in the current state of counts
-				if(counts != null) { //if this is not the first equivalence
-					double entropy = 0;
-					ListIterator<Integer> iter = counts.listIterator();
-					while(iter.hasNext()) {
-						double prob = iter.next() / sum;
-						entropy += prob * Math.log(prob);
-					}
-					if(-1 * entropy < Math.log(l)) { //entropy l-div constraint
-						return false;
-					}
-				}			
-				//now re-initialize the object for the next equivalence
-				counts = new ArrayList<Integer>();
-				sum = 0;
-				prevEID = currEID;
-			}
-			counts.add(currCount);
-			sum += currCount;
-		}
-		
-		//validate the condition on the last set of counts
-		if(counts != null && counts.size() > 0) { //if this is not the first equivalence
-			double entropy = 0;
-			ListIterator<Integer> iter = counts.listIterator();
-			while(iter.hasNext()) {
-				double prob = iter.next() / sum;
-				entropy += prob * Math.log(prob);
-			}
-			if(-1 * entropy < Math.log(l)) { //entropy l-div constraint
-				return false;
-			}
-		}
-		
-		//no violation, return true
-		return true;
+		return evaluate(SensitiveValueEvaluator.entropyLDiversity(l), sensIndex);
 	}
 	
 	/**
@@ -267,69 +638,7 @@ public class AnonRecordTable {
 	 * @throws SQLException
 	 */
 	public boolean checkLDiversityRequirement(double l, double c, int sensIndex) throws SQLException {
-		String select_SQL = "SELECT COUNT(*), EID FROM " + tableName
-			+ " GROUP BY ATT_" + Integer.toString(sensIndex) + ", EID ORDER BY EID";
-		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-	
-		long currEID; //EID of the current equivalence 
-		int currCount; //count for the current sensitive value of the current equivalence
-		long prevEID = Long.MIN_VALUE; //previous EID  value (used to check if EID has changed)
-		ArrayList<Integer> counts = null;
-		
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			currEID = rs.getLong(2);
-			currCount = rs.getInt(1);
-			
-			//if the EID has changed 
-			// (i)  validate conformity with l-div
-			// (ii) refresh the counts for the next equivalence
-			if(currEID != prevEID) {
-				//before refreshing, check if the condition is satisfied 
-				// in the current state of counts
-				if(counts != null) { //if this is not the first equivalence
-					if(counts.size() < l) {
-						return false;
-					} else {
-						Integer[] countVals = counts.toArray(new Integer[0]);
-						Arrays.sort(countVals); //sort in ascending order
-						int r_1 = countVals[countVals.length-1];
-						int sum = 0;
-						for(int i = (int) Math.round(countVals.length - l); i >= 0; i--) {
-							sum += countVals[i];
-						}
-						if(r_1 >= c * sum) {
-							return false;
-						}
-					}
-				}				
-				//now re-initialize the object for the next equivalence
-				counts = new ArrayList<Integer>();
-				prevEID = currEID;
-			}
-			counts.add(currCount);
-		}
-		
-		//validate the condition on the last set of counts
-		if(counts != null) { //if this is not the first equivalence
-			if(counts.size() < l) {
-				return false;
-			} else {
-				Integer[] countVals = counts.toArray(new Integer[0]);
-				Arrays.sort(countVals); //sort in ascending order
-				int r_1 = countVals[countVals.length-1];
-				int sum = 0;
-				for(int i = (int) Math.round(countVals.length - l); i >= 0; i--) {
-					sum += countVals[i];
-				}
-				if(r_1 >= c * sum) {
-					return false;
-				}
-			}			
-		}
-		
-		//no violation, return true
-		return true;
+		return evaluate(SensitiveValueEvaluator.recursiveLDiversity(l, c), sensIndex);
 	}
 	
 	/**
@@ -346,175 +655,57 @@ public class AnonRecordTable {
 		}
 		//compute the distribution over the entire table
 		int[] entireDist = new int[sensDomSize];
-		for(int i = 0; i < sensDomSize; i++) {
-			entireDist[i] = 0;
-		}
-		
-		String getDist_SQL = "SELECT COUNT(*), ATT_" + sensIndex + " FROM " + tableName
-			+ " GROUP BY ATT_" + sensIndex;
-		QueryResult result = sqlwrapper.executeQuery(getDist_SQL);
-		
-		//process the results
 		double entireSize = 0;
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			entireDist[(int) rs.getDouble(2)] = rs.getInt(1);
-			entireSize += rs.getInt(1);
-		}
-		
-		//now compute the distribution over each equivalence
-		long prevEID = -1;
-		int[] currDist = null;
-		String iterEqs_SQL = "SELECT EID, COUNT(*), ATT_" + sensIndex 
-			+ " FROM " + tableName
-			+ " GROUP BY EID, ATT_" + sensIndex
-			+ " ORDER BY EID";
-		result = sqlwrapper.executeQuery(iterEqs_SQL);
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			long currEID = rs.getLong(1);
-			int count = rs.getInt(2);
-			int attVal = (int) rs.getDouble(3); //no problem, since the values are from
-										//catDomMapping
-			//if the eid has changed
-			// (i)  if this is not the first iteration, check the t-closeness constraint
-			// (ii) refresh the counts for the next equivalence
-			if(prevEID != currEID) {
-				//verify conformance with t-closeness using currDist and entireDist
-				if(prevEID != -1) {
-					double currEIDsize = getEquivalenceSize(prevEID); 
-					double sum = 0;
-					for(int i = 0; i < entireDist.length; i++) {
-						sum += Math.abs(entireDist[i]/entireSize - currDist[i]/currEIDsize);
-					}
-					sum /= 2;
-					if(sum > t) {
-						return false;
-					}
-				}
-				//refresh the distribution object
-				currDist = new int[sensDomSize];
-				for(int i = 0; i < sensDomSize; i++) {
-					currDist[i] = 0;
-				}
-				//reset the prevID
-				prevEID = currEID;
-			}
-			//update distribution
-			currDist[attVal] = count;
+		double[][] valueCounts = getValueCounts(sensIndex);
+		for(int i = 0; i < valueCounts.length; i++) {
+			entireDist[(int) valueCounts[i][0]] = (int) valueCounts[i][1];
+			entireSize += valueCounts[i][1];
 		}
-		
-		//repeat the check for the last equivalence
-		if(currDist!= null && prevEID != -1) {
-			double sum = 0; //verify conformance with t-closeness using currDist and entireDist
-			double eqSize = getEquivalenceSize(prevEID);
-			for(int i = 0; i < entireDist.length; i++) {
-				sum += Math.abs(entireDist[i]/entireSize - currDist[i]/eqSize);
-			}
-			sum /= 2;
-			if(sum > t) {
-				return false;
-			}
-		}
-		
-		//no violation, return true
-		return true;
+		return evaluate(SensitiveValueEvaluator.tClosenessCat(t, entireDist, entireSize), sensIndex);
 	}
 	
 	/**
 	 * Checks the t-closeness privacy definition
 	 * @param t Privacy parameter
-	 * @param sensIndex index of a categorical sensitive attribute
+	 * @param sensIndex index of a numerical sensitive attribute
 	 * @return True if t-close, False otherwise
 	 * @throws SQLException
 	 */
 	public boolean checkTClosenessRequirement_Num(double t, int sensIndex) throws SQLException {
-		LinkedList<Double[]> entireCounts = new LinkedList<Double[]>();
-		String getDist_SQL = "SELECT COUNT(*), ATT_" + sensIndex + " FROM " + tableName
-			+ " GROUP BY ATT_" + sensIndex + " ORDER BY ATT_" + sensIndex;
-		QueryResult result = sqlwrapper.executeQuery(getDist_SQL);
-	
+		//compute the distribution over the entire table (in ascending order of values)
+		double[][] valueCounts = getValueCounts(sensIndex);
+		double[] entireValues = new double[valueCounts.length];
+		int[] entireCounts = new int[valueCounts.length];
 		double entireSize = 0; //necessary to convert counts to probabilities
-		//process the results
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			Double[] entry = new Double[2];
-			entry[0] = rs.getDouble(2); //first element will be the value
-			entry[1] = new Double(rs.getInt(1)); //second will be the count
-			//add this element to the list
-			entireCounts.add(entry);
-			entireSize += entry[1];
+		for(int i = 0; i < valueCounts.length; i++) {
+			entireValues[i] = valueCounts[i][0];
+			entireCounts[i] = (int) valueCounts[i][1];
+			entireSize += valueCounts[i][1];
 		}
-		
-		//now check t-closeness over each equivalence
-		String iterEqs_SQL = "SELECT DISTINCT(EID) FROM " + tableName;
-		result = sqlwrapper.executeQuery(iterEqs_SQL);
+		return evaluate(SensitiveValueEvaluator.tClosenessNum(t, entireValues, entireCounts, 
+				entireSize), sensIndex);
+	}
+	
+	/**
+	 * Feeds the (EID, sensitive value, count) triples of the table to an evaluator with a 
+	 * single query, stopping at the first violating equivalence
+	 * @param evaluator Evaluator of a privacy requirement
+	 * @param sensIndex index of the sensitive attribute
+	 * @return True if no equivalence violates the requirement, False otherwise
+	 * @throws SQLException
+	 */
+	boolean evaluate(SensitiveValueEvaluator evaluator, int sensIndex) throws SQLException {
+		String select_SQL = "SELECT EID, ATT_" + sensIndex + ", COUNT(*) FROM " + tableName
+			+ " GROUP BY EID, ATT_" + sensIndex + " ORDER BY EID, ATT_" + sensIndex;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
 		while(result.hasNext()) {
-			long eid = ((ResultSet) result.next()).getLong(1);
-			double eqSize = getEquivalenceSize(eid); //necessary to convert counts to probs
-			
-			//get the distribution
-			getDist_SQL = "SELECT COUNT(*), ATT_" + sensIndex 
-				+ " FROM " + tableName
-				+ " WHERE EID = " + eid 
-				+ " GROUP BY ATT_" + sensIndex
-				+ " ORDER BY ATT_" + sensIndex;
-			QueryResult subResult = sqlwrapper.executeQuery(getDist_SQL);
-			
-			double sumDist = 0; //total distance so far
-			double sumNoAbsolute = 0; //sum of distances w/o the absolute value 
-								//(i.e., at any currIndex, \Sum_{i = 1}^currIndex r_i) 
-			int m = entireCounts.size(); //domain size
-			double boundary = t * (m - 1); //maximum distance allowed
-			
-			//we will iterate over the entire counts, calculating r_i and 
-			// the ordered_dist between the last two elements
-			ListIterator<Double[]> iter = entireCounts.listIterator();
-			while(subResult.hasNext()) {
-				//store the current values
-				Double[] tableCurr = iter.next();
-				ResultSet srs = (ResultSet) subResult.next();
-				Double eqCurr = srs.getDouble(2);
-				int eqCount = srs.getInt(1);
-				
-				//we know for sure that eq elements is a subset of the table elements
-				// therefore, not need to check if eqCurr < tableCurr
-				// similarly, no need worry about tableCurr running out before the condition is met
-				while(tableCurr[0].compareTo(eqCurr) != 0) {
-					//we know that q_i = 0 for the equivalence
-					// therefore r_i = p_i - q_i = p_i = tableCurr[1] / entireSum
-					double r_i = tableCurr[1] / entireSize;
-					sumNoAbsolute += r_i;
-					if(sumDist > boundary) { //check before adding, 
-						return false;		 // so that only m-1 additions are accounted for
-					}
-					sumDist += Math.abs(sumNoAbsolute);
-					tableCurr = iter.next(); //here, no need to call iter.hasNext()
-				}
-				//at this point, we know that tableCurr[0] == eqCurr
-				//p_i = tableCurr[1] / entireSum
-				//q_i = eqCount / eqCount
-				//r_i = p_i - q_i
-				double r_i = tableCurr[1] / entireSize - eqCount / eqSize;
-				sumNoAbsolute += r_i;
-				if(sumDist > boundary) {
-					return false;
-				}
-				sumDist += Math.abs(sumNoAbsolute);
-			}
-			//now take care of any items still remaining in the entire distribution
-			while(iter.hasNext()) {
-				//we know that q_i = 0 for the equivalence
-				// therefore r_i = p_i - q_i = p_i = iter.next()[1] / entireSum
-				double r_i = iter.next()[1] / entireSize;
-				sumNoAbsolute += r_i;
-				if(sumDist > boundary) {
-					return false;
-				}
-				sumDist += Math.abs(sumNoAbsolute);
+			ResultSet rs = (ResultSet) result.next();
+			if(!evaluator.add(rs.getLong(1), rs.getDouble(2), rs.getInt(3))) {
+				result.close();
+				return false;
 			}
 		}
-		return true;
+		return evaluator.finish();
 	}
 	
 	/**
@@ -529,6 +720,21 @@ public class AnonRecordTable {
 		sqlwrapper.execute(update_SQL);
 	}
 	
+	/**
+	 * Moves the records of one equivalence that satisfy the predicate indicated by 
+	 * the interval on the specified attribute to the other equivalence
+	 * @param fromEID Source of the records to be moved
+	 * @param toEID Destination of the records to be moved
+	 * @param range The interval that the moved records fall into on attribute att
+	 * @param att An attribute index
+	 */
+	public void moveRecords(long fromEID, long toEID, Interval range, int att) {
+		String update_SQL = "UPDATE " + tableName 
+			+ " SET EID = " + toEID 
+			+ " WHERE EID = " + fromEID + " AND " + range.getPredicate("ATT_" + att);
+		sqlwrapper.execute(update_SQL);
+	}
+	
 	/**
 	 * From table that, copy the records with EID = oldEID into this
 	 *  table, overwriting oldEID as newEID
@@ -548,6 +754,72 @@ public class AnonRecordTable {
 		}
 		insert_SQL += " FROM " + that.getName() + " WHERE EID = " + oldEID;
 		sqlwrapper.execute(insert_SQL);
+		maxRID = -1; //copied RIDs might be larger
+	}
+	
+	/**
+	 * From table that, copy all records into this table, overwriting each EID with 
+	 * the EID it is mapped to (records with unmapped EIDs are not copied). The mapping is
+	 * stored into a temporary table and applied with a single INSERT ... SELECT ... JOIN.
+	 * @param that Another AnonRecordTable
+	 * @param eidMapping Mapping from the EIDs of that to the new EIDs
+	 */
+	public void copyFrom(AnonRecordTable that, Hashtable<Long, Long> eidMapping) throws SQLException{
+		String mapTable = createMappingTable(eidMapping);
+		
+		String insert_SQL = "INSERT INTO " + tableName + " SELECT A.RID, M.NEW_EID"; 
+		//select all other attributes
+		for(int i = 0; i < qidIndices.length; i++) {
+			insert_SQL += ", A.ATT_" + qidIndices[i];
+		}
+		for(int i = 0; i < sensIndices.length; i++) {
+			insert_SQL += ", A.ATT_" + sensIndices[i];
+		}
+		insert_SQL += " FROM " + that.getName() + " AS A JOIN " + mapTable + " AS M"
+			+ " ON A.EID = M.OLD_EID";
+		sqlwrapper.execute(insert_SQL);
+		sqlwrapper.execute("DROP TABLE " + mapTable);
+		maxRID = -1; //copied RIDs might be larger
+	}
+	
+	/**
+	 * Overwrites the EID of each record with the EID it is mapped to, in place (records 
+	 * with unmapped EIDs are not modified). The mapping is stored into a temporary table 
+	 * and applied with a single UPDATE, so that chained mappings (e.g., 2->1 and 1->3) 
+	 * do not interfere.
+	 * @param eidMapping Mapping from the current EIDs to the new EIDs
+	 */
+	public void remapEIDs(Hashtable<Long, Long> eidMapping) throws SQLException{
+		String mapTable = createMappingTable(eidMapping);
+		String update_SQL = "UPDATE " + tableName 
+			+ " SET EID = (SELECT NEW_EID FROM " + mapTable + " WHERE OLD_EID = EID)"
+			+ " WHERE EID IN (SELECT OLD_EID FROM " + mapTable + ")";
+		sqlwrapper.execute(update_SQL);
+		sqlwrapper.execute("DROP TABLE " + mapTable);
+	}
+	
+	/**
+	 * Stores an EID mapping into a temporary table (OLD_EID, NEW_EID)
+	 * @param eidMapping Mapping from old EIDs to new EIDs
+	 * @return Name of the temporary table
+	 */
+	private String createMappingTable(Hashtable<Long, Long> eidMapping) throws SQLException{
+		String mapTable = "MAP_" + tableName;
+		sqlwrapper.execute("DROP TABLE IF EXISTS " + mapTable);
+		sqlwrapper.execute("CREATE TABLE " + mapTable 
+				+ " (OLD_EID BIGINT PRIMARY KEY, NEW_EID BIGINT)");
+		PreparedStatement mapStatement = sqlwrapper.prepareStatement(
+				"INSERT INTO " + mapTable + " VALUES (?, ?)");
+		Iterator<Map.Entry<Long, Long>> iter = eidMapping.entrySet().iterator();
+		while(iter.hasNext()) {
+			Map.Entry<Long, Long> entry = iter.next();
+			mapStatement.setLong(1, entry.getKey());
+			mapStatement.setLong(2, entry.getValue());
+			mapStatement.addBatch();
+		}
+		mapStatement.executeBatch();
+		mapStatement.close();
+		return mapTable;
 	}
 	
 	/**
@@ -570,6 +842,7 @@ public class AnonRecordTable {
 		}
 		insert_SQL += " FROM " + that.getName() + " WHERE EID = " + oldEID;
 		sqlwrapper.execute(insert_SQL);
+		maxRID = -1; //copied RIDs might be larger
 		
 		String delete_SQL = "DELETE FROM " + that.tableName + " WHERE EID = " + oldEID;
 		sqlwrapper.execute(delete_SQL);
@@ -595,6 +868,7 @@ public class AnonRecordTable {
 		}
 		insert_SQL += " FROM " + that.tableName + " WHERE RID = " + RID;
 		sqlwrapper.execute(insert_SQL);
+		maxRID = -1; //copied RID might be larger
 		
 		String delete_SQL = "DELETE FROM " + that.tableName + " WHERE RID = " + RID;
 		sqlwrapper.execute(delete_SQL);
@@ -604,6 +878,8 @@ public class AnonRecordTable {
 	 * Drops this table from the database
 	 */
 	public void drop() {
+		closeInsertStatement();
+		maxRID = -1;
 		String drop_SQL = "DROP TABLE " + tableName;
 		sqlwrapper.execute(drop_SQL);
 	}
@@ -4,16 +4,26 @@ import incognito.Incognito_K;
 import incognito.Incognito_L;
 import incognito.Incognito_T;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileReader;
+import java.io.Closeable;
+import java.io.File;
 import java.io.FileWriter;
-import java.sql.ResultSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mondrian.Mondrian;
-import sqlwrapper.QueryResult;
+import sqlwrapper.QueryException;
 import sqlwrapper.SQLWrapper;
 import anatomy.Anatomy;
 import datafly.Datafly;
@@ -64,45 +74,171 @@ public abstract class Anonymizer {
 	
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., 
+	 * before any generalization, see encodeTuple())
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected abstract long insertTupleToEquivalenceTable(String[] vals) throws Exception;
+	protected abstract long insertTupleToEquivalenceTable(double[] qiVals) throws Exception;
 	
 	/** Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (see encodeTuple())
+	 * @param sensVals Encoded sensitive attribute values of the tuple (one for each 
+	 * sensitive attribute of anonTable)
 	 * @param eid Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected abstract void insertTupleToAnonTable(String[] vals, long eid) throws Exception;
+	protected void insertTupleToAnonTable(double[] qiVals, double[] sensVals, long eid) throws Exception{
+		anonTable.insert(eid, qiVals, sensVals);
+	}
+	
+	/** Size of the byte ranges of the input that are parsed by ingestion workers*/
+	private static final long CHUNK_SIZE = 1L << 22;
+	
+	/**
+	 * Encoded tuples of a byte range of the input
+	 */
+	private static class Chunk {
+		/** qi-attribute values of each tuple, followed by its sensitive attribute values*/
+		ArrayList<double[]> tuples = new ArrayList<double[]>();
+		/** true if the input ends within the range (i.e., an empty line was reached)*/
+		boolean endOfInput = false;
+	}
 	
 	/**
-	 * Read input data
+	 * Parses and encodes the tuples whose lines start within a byte range of the input.
+	 * Only reads shared state, therefore chunks can be parsed concurrently.
+	 * @param from File offset of the range
+	 * @param to File offset after the range
+	 * @param columns Indices of the qi-attributes, followed by those of the sensitive 
+	 * attributes of anonTable
+	 * @param mappings Categorical domain mapping of each column (null for numerical attributes)
+	 * @return Encoded tuples
+	 * @throws Exception
+	 */
+	private Chunk readChunk(long from, long to, int[] columns, 
+			ArrayList<HashMap<String, Integer>> mappings) throws Exception{
+		Chunk chunk = new Chunk();
+		CSVReader input = new CSVReader(conf.inputFilename, conf.separator, from, to);
+		try {
+			while(input.next()) {
+				if(input.isEmpty()) { //the input ends with the first empty line
+					chunk.endOfInput = true;
+					break;
+				}
+				if(input.hasMissingValues()) { //omit all lines with missing values
+					continue;
+				}
+				double[] tuple = new double[columns.length];
+				for(int i = 0; i < columns.length; i++) {
+					String attVal = input.getTrimmed(columns[i]);
+					if(mappings.get(i) != null) {
+						tuple[i] = mappings.get(i).get(attVal);
+					} else {
+						tuple[i] = Double.parseDouble(attVal);
+					}
+				}
+				chunk.tuples.add(tuple);
+			}
+		} finally {
+			input.close();
+		}
+		return chunk;
+	}
+	
+	/**
+	 * Read input data. The input is split into byte ranges, which are parsed and encoded 
+	 * concurrently (with conf.numThreads workers); encoded tuples are inserted in the
+	 * order of the input, so that RIDs follow the input lines.
 	 */
 	public void readData() throws Exception{
-		String filename = conf.inputFilename;
-		FileReader fr = new FileReader(filename);
-		BufferedReader input = new BufferedReader(fr);
+		//only qi-attributes and sensitive attributes of anonTable are encoded
+		int numQI = conf.qidAtts.length;
+		final int[] columns = new int[numQI + anonTable.sensIndices.length];
+		final ArrayList<HashMap<String, Integer>> mappings = new ArrayList<HashMap<String, Integer>>();
+		for(int i = 0; i < numQI; i++) {
+			columns[i] = conf.qidAtts[i].index;
+			mappings.add((conf.qidAtts[i].catDomMapping == null) ? null 
+					: new HashMap<String, Integer>(conf.qidAtts[i].catDomMapping));
+		}
+		for(int i = numQI; i < columns.length; i++) {
+			columns[i] = anonTable.sensIndices[i - numQI];
+			HashMap<String, Integer> mapping = null;
+			for(int j = 0; j < conf.sensitiveAtts.length; j++) {
+				if(conf.sensitiveAtts[j].index == columns[i] 
+						&& conf.sensitiveAtts[j].catDomMapping != null) {
+					mapping = new HashMap<String, Integer>(conf.sensitiveAtts[j].catDomMapping);
+				}
+			}
+			mappings.add(mapping);
+		}
 		
+		long start = System.currentTimeMillis();
+		long fileSize = new File(conf.inputFilename).length();
+		ExecutorService pool = null;
+		if(conf.numThreads > 1) {
+			pool = Executors.newFixedThreadPool(conf.numThreads);
+		}
+		anonTable.beginBulkInsert(conf.batchSize);
 		int count = 0;
-		String line;
-		while( (line = input.readLine()) != null && line.length() > 0) {
-			if(line.contains("?")) { //omit all lines with missing values
-				continue;
+		try {
+			LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+			long chunkStart = 0;
+			boolean endOfInput = false;
+			while(!endOfInput && (chunkStart < fileSize || !pending.isEmpty())) {
+				Chunk chunk;
+				if(pool == null) {
+					long to = Math.min(fileSize, chunkStart + CHUNK_SIZE);
+					chunk = readChunk(chunkStart, to, columns, mappings);
+					chunkStart = to;
+				} else {
+					//keep a bounded number of chunks in flight
+					while(pending.size() < 2 * conf.numThreads && chunkStart < fileSize) {
+						final long from = chunkStart;
+						final long to = Math.min(fileSize, chunkStart + CHUNK_SIZE);
+						pending.add(pool.submit(new Callable<Chunk>() {
+							public Chunk call() throws Exception {
+								return readChunk(from, to, columns, mappings);
+							}
+						}));
+						chunkStart = to;
+					}
+					try {
+						chunk = pending.removeFirst().get();
+					} catch(ExecutionException e) {
+						if(e.getCause() instanceof Exception) {
+							throw (Exception) e.getCause();
+						}
+						throw e;
+					}
+				}
+				
+				//insert the tuples of the chunk
+				double[] sensVals = new double[columns.length - numQI];
+				for(int t = 0; t < chunk.tuples.size(); t++) {
+					double[] tuple = chunk.tuples.get(t);
+					double[] qiVals = Arrays.copyOf(tuple, numQI);
+					if(sensVals.length > 0) {
+						sensVals = Arrays.copyOfRange(tuple, numQI, tuple.length);
+					}
+					//get Equivalence index
+					long eid = insertTupleToEquivalenceTable(qiVals);
+					//insert into AnonRecords
+					insertTupleToAnonTable(qiVals, sensVals, eid);
+					count++;
+				}
+				endOfInput = chunk.endOfInput;
 			}
-			count++;
-			String[] vals = line.split(conf.separator);
-			for(int i = 0; i < vals.length; i++) {
-				vals[i] = vals[i].trim();
+		} finally {
+			if(pool != null) {
+				pool.shutdownNow();
 			}
-			//get Equivalence index
-			Long eid = insertTupleToEquivalenceTable(vals);
-			//insert into AnonRecords
-			insertTupleToAnonTable(vals, eid);
+			anonTable.endBulkInsert(); //closes the insert statement, which locks the table
 		}
+		long stop = System.currentTimeMillis();
 		
-		input.close();
+		System.out.println("Read " + count + " records ("
+				+ (long) (count / Math.max((stop - start) / 1000.0, 0.001)) + " records/sec)");
 	}
 	
 	/**
@@ -110,38 +246,24 @@ public abstract class Anonymizer {
 	 */
 	public abstract void anonymize() throws Exception;
 	
+	/**
+	 * Checks whether anonymize() can be called again (e.g., with a new privacy parameter)
+	 * without reading the input again
+	 * @return true if the input tables are kept between runs of anonymize()
+	 */
+	protected boolean isReusable() {
+		return false;
+	}
+	
 	/**
 	 * Checks if the generalized data is ready for suppression
-	 * @param anonRecordTable Name of the current anonymization record table 
+	 * @param anonRecordTable Current anonymization record table 
 	 * @return Empty list if already k-anonymous, List of EIDs of 
 	 * equivalences that should be suppressed if ready for suppression,
 	 * null otherwise. 
 	 */
-	protected LinkedList<Long> isReadyForSuppression(String anonRecordTable) throws Exception{
-		//for all equivalences with less than k generalized tuples,
-		// sumEquivalenceSizes stores their total size
-		int sumEquivalenceSizes = 0;
-		LinkedList<Long> equivalencesToBeSuppressed = new LinkedList<Long>();
-		String select_SQL = "SELECT EID, COUNT(*) FROM " + anonRecordTable 
-			+ " GROUP BY EID ORDER BY COUNT(*) ASC";
-		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			Integer currCount = rs.getInt(2);
-			if(currCount < conf.k) {
-				//add EID to the list
-				equivalencesToBeSuppressed.add(rs.getLong(1));
-				sumEquivalenceSizes += currCount;
-				if(suppressionThreshold > 0 
-						&& sumEquivalenceSizes > suppressionThreshold) {
-					return null; //too many records for suppression, not ready yet
-				}
-			} else { //currCount >= conf.k
-				return equivalencesToBeSuppressed; //this is only to save time
-				//any tuple with currCount >= conf.k cannot be suppressed
-			}
-		}
-		return equivalencesToBeSuppressed;
+	protected LinkedList<Long> isReadyForSuppression(AnonRecordTable anonRecordTable) throws Exception{
+		return anonRecordTable.getSuppressionList(conf.k, suppressionThreshold);
 	}
 	
 	/**
@@ -179,6 +301,66 @@ public abstract class Anonymizer {
 	 * Output the results and close the connection to the database
 	 */
 	public void outputResults() throws Exception {
+		writeResults();
+		dropTables();
+		if(sqlwrapper != null) {
+			sqlwrapper.flush();
+		}
+	}	
+	
+	/**
+	 * Drops the current tables (the connection to the database is kept)
+	 */
+	protected void dropTables() {
+		anonTable.drop();
+		eqTable.drop();
+	}
+	
+	/**
+	 * Measures the information loss of the last anonymization
+	 * @return Number of equivalences, discernibility (sum of squared equivalence sizes) and 
+	 * normalized certainty penalty (average width of the generalized values over all records 
+	 * and qi-attributes, each width normalized by that of the suppression value)
+	 * @throws Exception
+	 */
+	public double[] getInformationLoss() throws Exception {
+		//width of the suppression value of each qi-attribute (i.e., the entire domain)
+		double[] suppWidths = new double[conf.qidAtts.length];
+		for(int i = 0; i < suppWidths.length; i++) {
+			Interval supRange = new Interval(conf.qidAtts[i].getSup());
+			suppWidths[i] = supRange.high - supRange.low;
+		}
+		
+		LinkedHashMap<Long, String[]> generalizations = eqTable.getGeneralizations();
+		long[][] sizes = anonTable.getEquivalenceSizes();
+		double numRecords = 0;
+		double discernibility = 0;
+		double penalty = 0;
+		for(int e = 0; e < sizes.length; e++) {
+			double size = sizes[e][1];
+			numRecords += size;
+			discernibility += size * size;
+			if(conf.outputFormat == Configuration.OUTPUT_FORMAT_ANATOMY) {
+				continue; //qi-values are not generalized in QIT
+			}
+			String[] genVals = generalizations.get(sizes[e][0]);
+			for(int i = 0; i < genVals.length; i++) {
+				Interval genRange = new Interval(genVals[i]);
+				if(suppWidths[i] > 0) {
+					penalty += size * (genRange.high - genRange.low) / suppWidths[i];
+				}
+			}
+		}
+		double ncp = (numRecords > 0) ? penalty / (numRecords * conf.qidAtts.length) : 0;
+		return new double[] {sizes.length, discernibility, ncp};
+	}
+	
+	/**
+	 * Output the results of the last anonymization but keep the tables, so that the input
+	 * can be anonymized again (e.g., with a new privacy parameter) and written to another file
+	 * (see Configuration.outputFilename)
+	 */
+	public void writeResults() throws Exception {
 		if(conf.outputFormat == Configuration.OUTPUT_FORMAT_GENVALS) {
 			outputResults_GenVals();
 		} else if(conf.outputFormat == Configuration.OUTPUT_FORMAT_GENVALSDIST) {
@@ -186,168 +368,225 @@ public abstract class Anonymizer {
 		} else {
 			outputResults_Anatomy();
 		}
-		anonTable.drop();
-		eqTable.drop();
-		sqlwrapper.flush();
-	}	
+	}
+	
+	/**
+	 * Closes each of the (non-null) resources, even if closing an earlier one fails
+	 * @param resources Resources to be closed
+	 * @throws IOException The first failure, once all resources are closed
+	 */
+	private static void close(Closeable... resources) throws IOException{
+		IOException failure = null;
+		for(Closeable resource : resources) {
+			if(resource != null) {
+				try {
+					resource.close();
+				} catch(IOException e) {
+					if(failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		if(failure != null) {
+			throw failure;
+		}
+	}
+	
+	/**
+	 * Fetches the anonymized record that corresponds to an input record
+	 * @param records Anonymized records in ascending order of RIDs (see AnonRecordTable.getRecords())
+	 * @param rid Record ID of the input record
+	 * @return The anonymized record (RID, EID, followed by qi-values)
+	 * @throws Exception If the record is missing
+	 */
+	private double[] nextRecord(Iterator<double[]> records, long rid) throws Exception{
+		double[] record = records.hasNext() ? records.next() : null;
+		if(record == null || (long) record[0] != rid) {
+			throw new Exception("Anonymized record " + rid + " is missing!");
+		}
+		return record;
+	}
+	
+	/**
+	 * Marks the id attributes of an input record
+	 * @param numAtts Number of attributes of the input record
+	 * @return true for each attribute that is an id attribute
+	 */
+	private boolean[] getIDAttributeMask(int numAtts) {
+		boolean[] isID = new boolean[numAtts];
+		if(conf.idAttributeIndices != null) {
+			ListIterator<Integer> iter = conf.idAttributeIndices.listIterator();
+			while(iter.hasNext()) {
+				int index = iter.next();
+				if(index < numAtts) {
+					isID[index] = true;
+				}
+			}
+		}
+		return isID;
+	}
 	
 	/**
 	 * Output the results and close the connection to the database
 	 */
 	public void outputResults_GenVals() throws Exception{
+		outputResults_GenVals(eqTable.getGeneralizations());
+	}
+	
+	/**
+	 * Output the results, replacing qi-attribute values with those of their equivalences
+	 * @param generalizations Values of each equivalence, keyed by EIDs
+	 */
+	private void outputResults_GenVals(LinkedHashMap<Long, String[]> generalizations) throws Exception{
 		//carriage return for the system
 		String newline = System.getProperty("line.separator");
-		//open output file
-		FileWriter fw = new FileWriter(conf.outputFilename);
-		BufferedWriter output = new BufferedWriter(fw);
-		//open input file
-		FileReader fr = new FileReader(conf.inputFilename);
-		BufferedReader input = new BufferedReader(fr);
-		
-		long rid = 1;
-		String inputline;
-		//need to synchronize the input and output records, will iterate through the input
-		while( (inputline = input.readLine()) != null && inputline.length() > 0) {
-			if(inputline.contains("?")) { //omit all lines with missing values
-				continue;
-			}
-			String[] vals = inputline.split(conf.separator);
+		BufferedWriter output = null;
+		CSVReader input = null;
+		AnonRecordTable.RecordIterator records = null;
+		try {
+			//open output file
+			output = new BufferedWriter(new FileWriter(conf.outputFilename), 1 << 16);
+			//open input file
+			input = new CSVReader(conf.inputFilename, conf.separator);
 			
-			//get the eid for the current rid
-			String getEIDforRID  ="SELECT EID FROM " + anonTable.getName() + " WHERE RID = " + rid;
-			QueryResult result = sqlwrapper.executeQuery(getEIDforRID);
-			Long eid = ((ResultSet) result.next()).getLong(1);
-			rid++; //increment rid for the next tuple to be retrieved
+			//stream the records alongside the input
+			records = anonTable.getRecords();
+			boolean[] isID = new boolean[0]; //id attributes are omitted from the output
+			StringBuilder line = new StringBuilder();
 			
-			//from the equivalence ID, get the generalized values
-			String[] genVals = eqTable.getGeneralization(eid);			
-			//overwrite vals with values from genVals
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				vals[conf.qidAtts[i].index] = genVals[i];
-			}
-			//overwrite id values
-			if(conf.idAttributeIndices != null) {
-				ListIterator<Integer> iter = conf.idAttributeIndices.listIterator();
-				while(iter.hasNext()) {
-					vals[iter.next()] = null;
+			long rid = 1;
+			//need to synchronize the input and output records, will iterate through the input
+			while(input.next() && !input.isEmpty()) {
+				if(input.hasMissingValues()) { //omit all lines with missing values
+					continue;
 				}
-			}
+				String[] vals = new String[input.size()];
+				if(isID.length != vals.length) {
+					isID = getIDAttributeMask(vals.length);
+				}
+			
+				//get the eid for the current rid
+				long eid = (long) nextRecord(records, rid)[1];
+				rid++; //increment rid for the next tuple to be retrieved
 			
-			//build output string
-			String line = "";
-			for(int i = 0; i < vals.length; i++) {
-				if(vals[i] != null) {
-					line += conf.separator + vals[i];
+				//from the equivalence ID, get the generalized values
+				String[] genVals = generalizations.get(eid);
+				//overwrite vals with values from genVals
+				for(int i = 0; i < conf.qidAtts.length; i++) {
+					vals[conf.qidAtts[i].index] = genVals[i];
 				}
+			
+				//build output string (id values are omitted)
+				line.setLength(0);
+				boolean first = true;
+				for(int i = 0; i < vals.length; i++) {
+					if(!isID[i]) {
+						if(!first) {
+							line.append(conf.separator);
+						}
+						line.append((vals[i] != null) ? vals[i] : input.get(i));
+						first = false;
+					}
+				}
+				line.append(newline);
+				output.append(line);
 			}
-			line = line.substring(conf.separator.length()); //remove the extra separator in the beginning
-			line += newline;
-			output.write(line);
+		} finally {
+			close(records, input, output);
 		}
-		//close the output file
-		output.close();
 	}
 	
 	/**
 	 * Output the results and close the connection to the database
 	 */
 	public void outputResults_GenValsDist() throws Exception{
-		//first generate distribution - this call updates genVals of each equivalence in eqTable
-		generateDistributions();
-		//then output genVals as usual
-		outputResults_GenVals();
+		//first generate distributions, then output them in place of genVals
+		outputResults_GenVals(generateDistributions());
 	}
 	
 	/**
-	 * Generates quasi-identifier distributions for each quasi-identifier
+	 * Generates quasi-identifier distributions for each quasi-identifier, with a single scan
+	 * of the anonRecords table
+	 * @return Distributions of each equivalence (keyed by the EID, in the order of eqTable), 
+	 * in place of generalized values
 	 * @throws Exception
 	 */
-	private void generateDistributions() throws Exception{
-		//iterate over all equivalences
-		String iterateEqs = "SELECT EID FROM " + eqTable.getName();
-		QueryResult result = sqlwrapper.executeQuery(iterateEqs);
-		while(result.hasNext()) {
-			//get the eid and the current generalized values
-			long eid = ((ResultSet) result.next()).getLong(1);
-			String[] genVals = eqTable.getGeneralization(eid);
-			
-			//array for statistical information on qid attributes
-			boolean existsNumerical = false;
-			double[][] statistics = new double[conf.qidAtts.length][];
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				if(conf.qidAtts[i].catDomMapping != null) { //categorical, get pmf
-					statistics[i] = new double[conf.qidAtts[i].catDomMapping.size()];
-				} else { //numerical, get pdf
-					statistics[i] = new double[2];
-					existsNumerical = true;
-				}
+	private LinkedHashMap<Long, String[]> generateDistributions() throws Exception{
+		//map each equivalence to a dense index for the accumulators
+		long[] eids = eqTable.getEIDs();
+		HashMap<Long, Integer> eidIndices = new HashMap<Long, Integer>();
+		for(int e = 0; e < eids.length; e++) {
+			eidIndices.put(eids[e], e);
+		}
+		
+		//accumulators for statistical information on qid attributes
+		int[] numTuples = new int[eids.length];
+		double[][][] counts = new double[conf.qidAtts.length][][]; //categorical, value counts
+		double[][] sums = new double[conf.qidAtts.length][]; //numerical, sums of values
+		double[][] means = new double[conf.qidAtts.length][]; //numerical, running means
+		double[][] m2s = new double[conf.qidAtts.length][]; //numerical, sums of squared differences
+		for(int i = 0; i < conf.qidAtts.length; i++) {
+			if(conf.qidAtts[i].catDomMapping != null) { //categorical, get pmf
+				counts[i] = new double[eids.length][conf.qidAtts[i].catDomMapping.size()];
+			} else { //numerical, get pdf
+				sums[i] = new double[eids.length];
+				means[i] = new double[eids.length];
+				m2s[i] = new double[eids.length];
 			}
-			//iterate over all tuples
-			int numTuples = 0;
-			String iterateTuples = "SELECT * FROM " + anonTable.getName() + " WHERE EID = " + eid;
-			QueryResult subresult = sqlwrapper.executeQuery(iterateTuples);
-			while(subresult.hasNext()) {
-				numTuples++;
-				ResultSet rs = (ResultSet) subresult.next();
+		}
+		
+		//iterate over all tuples once (Welford's method for the variance)
+		AnonRecordTable.RecordIterator records = anonTable.getRecords();
+		try {
+			while(records.hasNext()) {
+				double[] record = records.next();
+				Integer e = eidIndices.get((long) record[1]);
+				if(e == null) {
+					continue;
+				}
+				int n = ++numTuples[e];
 				//update statistics
 				for(int i = 0; i < conf.qidAtts.length; i++) {
-					if(conf.qidAtts[i].catDomMapping != null) { //categorical
+					double val = record[i+2];
+					if(counts[i] != null) { //categorical
 						//increment the count for the value
-						statistics[i][(int)rs.getDouble("ATT_" + conf.qidAtts[i].index)]++;
+						counts[i][e][(int) val]++;
 					} else { //numerical
-						//increment mean by value
-						statistics[i][0] += rs.getDouble("ATT_" + conf.qidAtts[i].index);
+						sums[i][e] += val;
+						double delta = val - means[i][e];
+						means[i][e] += delta / n;
+						m2s[i][e] += delta * (val - means[i][e]);
 					}
 				}
 			}
-			//convert counts to probs for categorical atts, sums to means for numerical atts
+		} finally {
+			records.close();
+		}
+		
+		//convert counts to probs for categorical atts, sums to means (and variances) 
+		// for numerical atts
+		LinkedHashMap<Long, String[]> retVal = new LinkedHashMap<Long, String[]>();
+		StringBuilder dist = new StringBuilder();
+		for(int e = 0; e < eids.length; e++) {
+			String[] genVals = new String[conf.qidAtts.length];
 			for(int i = 0; i < conf.qidAtts.length; i++) {
-				if(conf.qidAtts[i].catDomMapping != null) { //categorical
-					for(int j = 0; j < statistics[i].length; j++) {
-						statistics[i][j] /= numTuples;
-					}
-				} else { //numerical
-					statistics[i][0] /= numTuples;
-				}
-			}
-			//if there are numerical attributes, re-iterate to calculate the std
-			if(existsNumerical) {
-				subresult = sqlwrapper.executeQuery(iterateTuples);
-				while(subresult.hasNext()) {
-					ResultSet rs = (ResultSet) subresult.next();
-					//update statistics
-					for(int i = 0; i < conf.qidAtts.length; i++) {
-						if(conf.qidAtts[i].catDomMapping == null) { //numerical
-							double diff = rs.getDouble("ATT_" + conf.qidAtts[i].index) - statistics[i][0]; 
-							statistics[i][1] += diff * diff;
+				dist.setLength(0);
+				if(counts[i] != null) { //categorical
+					for(int j = 0; j < counts[i][e].length; j++) {
+						if(j > 0) {
+							dist.append(':');
 						}
-					}
-				}
-				//compute stdev
-				for(int i = 0; i < conf.qidAtts.length; i++) {
-					if(conf.qidAtts[i].catDomMapping == null) { //numerical
-						statistics[i][1] /= numTuples;
-					}
-				}
-			}
-			//now that we have all statistical information regarding an equivalence class,
-			// we can overwrite generalized values to contain as such
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				String dist = "";
-				if(conf.qidAtts[i].catDomMapping != null) { //categorical
-					dist = Double.toString(statistics[i][0]);
-					for(int j = 1; j < statistics[i].length; j++) {
-						dist += ":" + statistics[i][j];
+						dist.append(counts[i][e][j] / numTuples[e]);
 					}
 				} else { //numerical
-					dist = statistics[i][0] + ":" + statistics[i][1];
+					dist.append(sums[i][e] / numTuples[e]).append(':').append(m2s[i][e] / numTuples[e]);
 				}
-				//genVals[i] = genVals[i] + conf.separator + dist;
-				genVals[i] = dist;
+				genVals[i] = dist.toString();
 			}
-			//overwrite generalized values in eqTable
-			eqTable.setGeneralization(eid, genVals);
+			retVal.put(eids[e], genVals);
 		}
+		return retVal;
 	}
 	
 	/**
@@ -368,65 +607,62 @@ public abstract class Anonymizer {
 			f1 = conf.outputFilename + "_QIT";
 			f2 = conf.outputFilename + "_ST";
 		}
-		FileWriter fw1 = new FileWriter(f1);
-		BufferedWriter outputQIT = new BufferedWriter(fw1);
-		FileWriter fw2 = new FileWriter(f2);
-		BufferedWriter outputST = new BufferedWriter(fw2);		
-		//open input file
-		FileReader fr = new FileReader(conf.inputFilename);
-		BufferedReader input = new BufferedReader(fr);
-		
-		long rid = 1;
-		String inputline;
-		//need to synchronize the input and output records, will iterate through the input
-		while( (inputline = input.readLine()) != null && inputline.length() > 0) {
-			if(inputline.contains("?")) { //omit all lines with missing values
-				continue;
-			}
-			String[] vals = inputline.split(conf.separator);
+		BufferedWriter outputQIT = null;
+		BufferedWriter outputST = null;
+		CSVReader input = null;
+		AnonRecordTable.RecordIterator records = null;
+		try {
+			outputQIT = new BufferedWriter(new FileWriter(f1), 1 << 16);
+			outputST = new BufferedWriter(new FileWriter(f2), 1 << 16);
+			//open input file
+			input = new CSVReader(conf.inputFilename, conf.separator);
 			
-			//get the eid for the current rid
-			String getEIDforRID  ="SELECT * FROM " + anonTable.getName() + " WHERE RID = " + rid;
-			QueryResult result = sqlwrapper.executeQuery(getEIDforRID);
-			ResultSet rs = (ResultSet) result.next();
-			Long eid = rs.getLong("EID");
-			rid++; //increment rid for the next tuple to be retrieved
+			//stream the records alongside the input
+			records = anonTable.getRecords();
+			boolean[] isOmitted = new boolean[0]; //qi-attributes and id attributes are not in ST
+			StringBuilder line = new StringBuilder();
 			
-			//get qi-values of the tuple
-			String[] qiVals = new String[conf.qidAtts.length];
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				vals[conf.qidAtts[i].index] = null;
-				qiVals[i] = Double.toString(rs.getDouble("ATT_" + conf.qidAtts[i].index));
-			}
+			long rid = 1;
+			//need to synchronize the input and output records, will iterate through the input
+			while(input.next() && !input.isEmpty()) {
+				if(input.hasMissingValues()) { //omit all lines with missing values
+					continue;
+				}
+				int numAtts = input.size();
+				if(isOmitted.length != numAtts) {
+					isOmitted = getIDAttributeMask(numAtts);
+					for(int i = 0; i < conf.qidAtts.length; i++) {
+						isOmitted[conf.qidAtts[i].index] = true;
+					}
+				}
 			
-			//to QIT, output EID and qiVals
-			String line = qiVals[0];
-			for(int i = 1; i < qiVals.length; i++) {
-				line += conf.separator + qiVals[i];
-			}
-			line += conf.separator + Long.toString(eid) + newline;
-			outputQIT.write(line);
+				//get the eid and qi-values for the current rid
+				double[] record = nextRecord(records, rid);
+				long eid = (long) record[1];
+				rid++; //increment rid for the next tuple to be retrieved
 			
-			//to SIT, output the rest
-			if(conf.idAttributeIndices != null) { 
-				//overwrite id values
-				ListIterator<Integer> iter = conf.idAttributeIndices.listIterator();
-				while(iter.hasNext()) {
-					vals[iter.next()] = null;
+				//to QIT, output qi-values and EID
+				line.setLength(0);
+				for(int i = 0; i < conf.qidAtts.length; i++) {
+					line.append(record[i+2]).append(conf.separator);
 				}
-			}
-			line = Long.toString(eid); //build output string
-			for(int i = 0; i < vals.length; i++) {
-				if(vals[i] != null) {
-					line += conf.separator + vals[i];
+				line.append(eid).append(newline);
+				outputQIT.append(line);
+			
+				//to SIT, output the rest
+				line.setLength(0);
+				line.append(eid); //build output string
+				for(int i = 0; i < numAtts; i++) {
+					if(!isOmitted[i]) {
+						line.append(conf.separator).append(input.get(i));
+					}
 				}
+				line.append(newline);
+				outputST.append(line);
 			}
-			line += newline;
-			outputST.write(line);
+		} finally {
+			close(records, input, outputQIT, outputST);
 		}
-		//close the output files
-		outputQIT.close();
-		outputST.close();
 	}
 	
 //	/**
@@ -447,7 +683,11 @@ public abstract class Anonymizer {
 //			+ newline + "\t|  -input STRING"
 //			+ newline + "\t|  -separator STRING"
 //			+ newline + "\t|  -output STRING"
-//			+ newline + "\t|  -outputformat {genVals, genValsDist, anatomy}";
+//			+ newline + "\t|  -outputformat {genVals, genValsDist, anatomy}"
+//			+ newline + "\t|  -storage {sqlite, memory}"
+//			+ newline + "\t|  -batchsize INT"
+//			+ newline + "\t|  -fetchsize INT"
+//			+ newline + "\t|  -threads INT";
 //		System.out.println(usage);
 //	}
 	
@@ -461,8 +701,137 @@ public abstract class Anonymizer {
 	}
 	
 	public static void anonymizeDataset(Configuration conf) throws Exception {
+		try {
+			if(conf.sweepValues != null) {
+				sweepDataset(conf);
+				return;
+			}
+			//initialize anonymizer
+			Anonymizer anon = createAnonymizer(conf);
+		
+			//read data
+			long start = System.currentTimeMillis();
+			anon.readData();
+			long stop = System.currentTimeMillis();
+			System.out.println("Reading data takes " + Long.toString((stop - start)/1000) + "sec.s");
+			//anonymize
+			start = System.currentTimeMillis();
+			anon.anonymize();
+			stop = System.currentTimeMillis();
+			System.out.println("Anonymization takes " + Long.toString((stop - start)/1000) + "sec.s");
+			//output results
+			start = System.currentTimeMillis();
+			anon.outputResults();
+			stop = System.currentTimeMillis();
+			System.out.println("Writing data takes " + Long.toString((stop - start)/1000) + "sec.s");
+		} catch(QueryException e) { //SQL errors of streamed queries are thrown unchecked
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Anonymize an input once for each privacy parameter in Configuration.sweepValues (k, l or
+	 * t, depending on the method). Methods that can be reused (Mondrian and Incognito) read
+	 * the input once and share intermediate results between parameters, other methods read
+	 * the input again for each parameter. The output of each parameter is written to a file 
+	 * named after the parameter (e.g., out_k10.csv for out.csv), and a summary of information 
+	 * loss and runtimes is written to out_summary.csv.
+	 * @param conf Configuration instance
+	 * @throws Exception
+	 */
+	public static void sweepDataset(Configuration conf) throws Exception {
+		String newline = System.getProperty("line.separator");
+		String outputFilename = conf.outputFilename;
+		String paramName = conf.getPrivacyParameterName();
+		StringBuilder summary = new StringBuilder();
+		summary.append(paramName).append(",equivalences,discernibility,ncp,readMillis,anonymizationMillis");
+		summary.append(newline);
+		
+		Anonymizer anon = null;
+		try {
+			for(int v = 0; v < conf.sweepValues.length; v++) {
+				conf.setPrivacyParameter(conf.sweepValues[v]);
+				String value = conf.getPrivacyParameterString();
+				System.out.println("Anonymizing with " + paramName + " = " + value);
+				
+				//read data (only once if the anonymizer can be reused)
+				long start = System.currentTimeMillis();
+				if(anon == null || !anon.isReusable()) {
+					if(anon != null) {
+						anon.dropTables();
+					}
+					anon = createAnonymizer(conf);
+					anon.readData();
+				}
+				long readTime = System.currentTimeMillis() - start;
+				
+				//anonymize (a failure is reported in the summary, the sweep continues)
+				start = System.currentTimeMillis();
+				try {
+					anon.anonymize();
+				} catch(QueryException e) { //database errors abort the sweep
+					throw e;
+				} catch(Exception e) {
+					System.out.println("Anonymization with " + paramName + " = " + value 
+							+ " failed: " + e.getMessage());
+					summary.append(value).append(",failed,,,").append(readTime).append(',');
+					summary.append(System.currentTimeMillis() - start).append(newline);
+					continue;
+				}
+				long anonTime = System.currentTimeMillis() - start;
+				
+				//output results
+				conf.outputFilename = appendToFilename(outputFilename, "_" + paramName + value);
+				anon.writeResults();
+				double[] loss = anon.getInformationLoss();
+				summary.append(value).append(',').append((long) loss[0]).append(',');
+				summary.append((long) loss[1]).append(',').append(loss[2]).append(',');
+				summary.append(readTime).append(',').append(anonTime).append(newline);
+			}
+		} finally {
+			conf.outputFilename = outputFilename;
+			if(anon != null) {
+				anon.dropTables();
+				if(anon.sqlwrapper != null) {
+					anon.sqlwrapper.flush();
+				}
+			}
+		}
+		
+		//write the summary
+		BufferedWriter output = null;
+		try {
+			output = new BufferedWriter(
+					new FileWriter(appendToFilename(outputFilename, "_summary")));
+			output.append(summary);
+		} finally {
+			close(output);
+		}
+		System.out.print(summary);
+	}
+	
+	/**
+	 * Inserts a tag before the extension of a filename
+	 * @param filename A filename
+	 * @param tag Tag to be inserted
+	 * @return filename with the tag (appended if there is no extension)
+	 */
+	private static String appendToFilename(String filename, String tag) {
+		int extensionIndex = filename.lastIndexOf('.');
+		if(extensionIndex <= filename.lastIndexOf(File.separatorChar)) {
+			return filename + tag;
+		}
+		return filename.substring(0, extensionIndex) + tag + filename.substring(extensionIndex);
+	}
+	
+	/**
+	 * Creates the anonymizer of the method set in the configuration
+	 * @param conf Configuration instance
+	 * @return A new anonymizer
+	 * @throws Exception
+	 */
+	private static Anonymizer createAnonymizer(Configuration conf) throws Exception {
 		Anonymizer anon = null;
-		//initialize anonymizer
 		switch(conf.anonMethod) {
 		case Configuration.METHOD_DATAFLY: 
 			anon = new Datafly(conf);
@@ -483,22 +852,10 @@ public abstract class Anonymizer {
 			anon = new Anatomy(conf);
 			break;				
 		}
-		
-		//read data
-		long start = System.currentTimeMillis();
-		anon.readData();
-		long stop = System.currentTimeMillis();
-		System.out.println("Reading data takes " + Long.toString((stop - start)/1000) + "sec.s");
-		//anonymize
-		start = System.currentTimeMillis();
-		anon.anonymize();
-		stop = System.currentTimeMillis();
-		System.out.println("Anonymization takes " + Long.toString((stop - start)/1000) + "sec.s");
-		//output results
-		start = System.currentTimeMillis();
-		anon.outputResults();
-		stop = System.currentTimeMillis();
-		System.out.println("Writing data takes " + Long.toString((stop - start)/1000) + "sec.s");
+		if(anon != null && anon.sqlwrapper != null) {
+			anon.sqlwrapper.setFetchSize(conf.fetchSize);
+		}
+		return anon;
 	}
 	
 	public static void main(String[] args) {
@@ -0,0 +1,331 @@
+package anonymizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reader for separated-value input files. The file is memory-mapped (in windows, so that
+ * inputs larger than 2GB can be read) and each line is split into fields directly from
+ * the bytes; fields are decoded to strings only when requested, so that callers pay only
+ * for the columns they use.
+ * <p/>
+ * Lines end with "\n", "\r" or "\r\n" (as in BufferedReader.readLine()) and fields are
+ * split as in String.split(separator), i.e., trailing empty fields are dropped. Unlike
+ * String.split(), the separator is not interpreted as a regular expression.
+ */
+public class CSVReader implements Closeable {
+	/** Size of each mapped window of the file*/
+	private static final long WINDOW_SIZE = 1L << 26;
+
+	/** Marker of a missing value*/
+	private static final byte MISSING = '?';
+
+	/** The input file*/
+	private RandomAccessFile file;
+
+	/** Channel of the input file*/
+	private FileChannel channel;
+
+	/** Size of the input file*/
+	private long fileSize;
+
+	/** Currently mapped window of the file*/
+	private MappedByteBuffer window = null;
+
+	/** File offsets of the first byte of the window, and the byte after the window*/
+	private long windowStart = 0, windowEnd = 0;
+
+	/** File offset of the next line*/
+	private long position = 0;
+
+	/** Lines that start at or after this file offset are not read*/
+	private long end;
+
+	/** Field separator*/
+	private byte[] separator;
+
+	/** Bytes of the current line*/
+	private byte[] line = new byte[1024];
+
+	/** Number of bytes of the current line*/
+	private int lineLength = 0;
+
+	/** Start and end (exclusive) of each field within line*/
+	private int[] starts = new int[64], ends = new int[64];
+
+	/** true for each field that contains a missing value*/
+	private boolean[] missing = new boolean[64];
+
+	/** Number of fields of the current line*/
+	private int numFields = 0;
+
+	/**
+	 * Class constructor
+	 * @param filename Name of the input file
+	 * @param separator Field separator
+	 * @throws IOException
+	 */
+	public CSVReader(String filename, String separator) throws IOException{
+		this(filename, separator, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Class constructor for reading the lines that start within a byte range of the file, 
+	 * so that a file can be split into chunks at arbitrary offsets and each line is read
+	 * by exactly one chunk
+	 * @param filename Name of the input file
+	 * @param separator Field separator
+	 * @param from File offset of the range
+	 * @param to File offset after the range
+	 * @throws IOException
+	 */
+	public CSVReader(String filename, String separator, long from, long to) throws IOException{
+		this.file = new RandomAccessFile(filename, "r");
+		this.channel = file.getChannel();
+		this.fileSize = channel.size();
+		this.separator = separator.getBytes();
+		this.end = Math.min(to, fileSize);
+		
+		//move to the first line that starts within the range
+		position = Math.min(from, fileSize);
+		if(position > 0) {
+			position--;
+			byte prev = read();
+			if(prev == '\r') { //skip the '\n' of a "\r\n" that is split by from
+				if(position < fileSize && read() != '\n') {
+					position--;
+				}
+			} else if(prev != '\n') { //from is within a line, skip to the next one
+				skipLine();
+			}
+		}
+	}
+
+	/**
+	 * Moves the current position after the end of the current line
+	 * @throws IOException
+	 */
+	private void skipLine() throws IOException{
+		while(position < fileSize) {
+			byte b = read();
+			if(b == '\n') {
+				break;
+			} else if(b == '\r') {
+				if(position < fileSize && read() != '\n') {
+					position--;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Maps the window that starts at the specified file offset
+	 * @param offset File offset
+	 * @throws IOException
+	 */
+	private void map(long offset) throws IOException{
+		windowStart = offset;
+		windowEnd = Math.min(fileSize, offset + WINDOW_SIZE);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+	}
+
+	/**
+	 * Reads the byte at the current position
+	 * @return the byte
+	 * @throws IOException
+	 */
+	private byte read() throws IOException{
+		if(position >= windowEnd) {
+			map(position);
+		}
+		return window.get((int) (position++ - windowStart));
+	}
+
+	/**
+	 * Advances to the next line
+	 * @return false if the end of the file (or the range) is reached, true otherwise
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException{
+		if(position >= end) {
+			numFields = 0;
+			lineLength = 0;
+			return false;
+		}
+		//copy the line
+		lineLength = 0;
+		while(position < fileSize) {
+			byte b = read();
+			if(b == '\n') {
+				break;
+			} else if(b == '\r') {
+				if(position < fileSize && read() != '\n') {
+					position--; //not "\r\n", the next line starts right after '\r'
+				}
+				break;
+			}
+			if(lineLength == line.length) {
+				line = Arrays.copyOf(line, 2 * lineLength);
+			}
+			line[lineLength++] = b;
+		}
+		split();
+		return true;
+	}
+
+	/**
+	 * Splits the current line into fields
+	 */
+	private void split() {
+		numFields = 0;
+		int start = 0;
+		boolean isMissing = false;
+		int last = lineLength - separator.length;
+		for(int i = 0; i < lineLength; i++) {
+			if(line[i] == MISSING) {
+				isMissing = true;
+			}
+			if(i <= last && isSeparator(i)) {
+				addField(start, i, isMissing);
+				start = i + separator.length;
+				i = start - 1;
+				isMissing = false;
+			}
+		}
+		addField(start, lineLength, isMissing);
+		//as in String.split(), drop trailing empty fields (unless the line is empty)
+		if(lineLength > 0) {
+			while(numFields > 0 && starts[numFields-1] == ends[numFields-1]) {
+				numFields--;
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the separator starts at the specified position of the line
+	 * @param pos Position within the line
+	 * @return true if the separator starts at pos
+	 */
+	private boolean isSeparator(int pos) {
+		for(int j = 0; j < separator.length; j++) {
+			if(line[pos + j] != separator[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appends a field to the current line
+	 * @param start Start of the field within line
+	 * @param end End (exclusive) of the field within line
+	 * @param isMissing true if the field contains a missing value
+	 */
+	private void addField(int start, int end, boolean isMissing) {
+		if(numFields == starts.length) {
+			starts = Arrays.copyOf(starts, 2 * numFields);
+			ends = Arrays.copyOf(ends, 2 * numFields);
+			missing = Arrays.copyOf(missing, 2 * numFields);
+		}
+		starts[numFields] = start;
+		ends[numFields] = end;
+		missing[numFields] = isMissing;
+		numFields++;
+	}
+
+	/**
+	 * @return true if the current line is empty
+	 */
+	public boolean isEmpty() {
+		return lineLength == 0;
+	}
+
+	/**
+	 * @return true if the current line contains whitespace only
+	 */
+	public boolean isBlank() {
+		for(int i = 0; i < lineLength; i++) {
+			if((line[i] & 0xff) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of fields of the current line
+	 * @return Number of fields
+	 */
+	public int size() {
+		return numFields;
+	}
+
+	/**
+	 * Checks whether any field of the current line contains a missing value ("?")
+	 * @return true if a value is missing
+	 */
+	public boolean hasMissingValues() {
+		for(int i = 0; i < numFields; i++) {
+			if(missing[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a field contains a missing value ("?")
+	 * @param index Index of the field
+	 * @return true if the value is missing
+	 */
+	public boolean isMissing(int index) {
+		return missing[index];
+	}
+
+	/**
+	 * Get a field of the current line
+	 * @param index Index of the field
+	 * @return The field, as it appears in the input
+	 */
+	public String get(int index) {
+		if(index >= numFields) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		return new String(line, starts[index], ends[index] - starts[index]);
+	}
+
+	/**
+	 * Get a field of the current line without leading and trailing whitespace
+	 * @param index Index of the field
+	 * @return The trimmed field (as in String.trim())
+	 */
+	public String getTrimmed(int index) {
+		if(index >= numFields) {
+			throw new ArrayIndexOutOfBoundsException(index);
+		}
+		int start = starts[index];
+		int end = ends[index];
+		while(start < end && (line[start] & 0xff) <= ' ') {
+			start++;
+		}
+		while(end > start && (line[end-1] & 0xff) <= ' ') {
+			end--;
+		}
+		return new String(line, start, end - start);
+	}
+
+	/**
+	 * Closes the input file
+	 * @throws IOException
+	 */
+	public void close() throws IOException{
+		window = null;
+		channel.close();
+		file.close();
+	}
+}
@@ -20,8 +20,13 @@ import org.xml.sax.SAXException;
 <?xml version="1.0"?>
 <!-- Sample configuration file. Attributes 12 and 0 are part of the QID, attribute 41 is sensitive. k = 32-->
 <!-- Name attributes of 'att' nodes are not used, included just for reference.-->
-<config method = 'Datafly' k = '5'>
-	<input filename='census-income_ALL.data' separator=','/> <!-- If left blank, separator will be set as comma by default.-->
+<config method = 'Datafly' k = '5' storage = 'sqlite' threads = '4'> <!-- Storage options = {sqlite, memory}. If left blank, 
+records will be stored in the embedded database by default. Incognito evaluates each level of the generalization lattice 
+and Mondrian splits independent partitions with threads workers (number of available processors by default).
+An optional sweep = '2,5,10' anonymizes the input once for each listed k (l or t, depending on the method).-->
+	<input filename='census-income_ALL.data' separator=',' batchSize='10000' fetchSize='10000'/> <!-- If left blank, separator will be set as comma by default.
+	Records are loaded into the embedded database in batches of batchSize (10000 by default), and full scans of the records
+	read fetchSize rows at a time from the embedded database (10000 by default).-->
 	<output filename='census-incomeK5.data' format ='genValsDist'/> <!-- Format options = {genVals, genValsDist, anatomy}. If left blank,
 	output format will be set as genVals by default.-->
 	<id> <!-- List of identifier attributes, if any, these will be excluded from the output -->
@@ -125,9 +130,20 @@ public class Configuration {
 	/** Anatomy anonymization method*/
 	public static final int METHOD_ANATOMY = 6;
 	
+	/** Records and equivalences are stored in the embedded SQLite database (full scans of the
+	 * records are paged on RIDs, suitable for inputs that do not fit into the memory)*/
+	public static final int STORAGE_SQLITE = 1;
+	
+	/** Records and equivalences are stored in main memory in columnar form (no SQL is issued,
+	 * suitable for inputs that fit into the memory)*/
+	public static final int STORAGE_MEMORY = 2;
+	
 	/** Anonymization method */
 	public int anonMethod = METHOD_MONDRIAN;
 	
+	/** Storage backend for equivalence and anonymized record tables */
+	public int storage = STORAGE_SQLITE;
+	
 	/** Maximum number of tuples to be suppressed */
 	public int suppressionThreshold = 10;
 	
@@ -143,12 +159,25 @@ public class Configuration {
 	/**t of t-closeness */
 	public double t = 0.2;
 	
+	/** privacy parameters (k, l or t, depending on the method) to be swept, null for a single run */
+	public double[] sweepValues = null;
+	
 	/** input filename */
 	public String inputFilename = null;
 	
 	/** attribute value separator for the input*/
 	public String separator = ",";
 	
+	/** number of records inserted (and committed) as a single batch while reading the input*/
+	public int batchSize = 10000;
+	
+	/** number of rows fetched from the embedded database at a time while reading query results
+	 * (the page size of full scans of the records, a hint for the driver otherwise)*/
+	public int fetchSize = 10000;
+	
+	/** number of worker threads (used by Incognito to evaluate lattice entries and by Mondrian to split partitions)*/
+	public int numThreads = Runtime.getRuntime().availableProcessors();
+	
 	/** output filename */
 	public String outputFilename = null;
 	
@@ -251,6 +280,12 @@ public class Configuration {
             } else if(attName.compareToIgnoreCase("method") == 0) {
             	String method = atts.item(j).getNodeValue();
             	setMethod(method);
+            } else if(attName.compareToIgnoreCase("storage") == 0) {
+            	setStorage(atts.item(j).getNodeValue());
+            } else if(attName.compareToIgnoreCase("threads") == 0) {
+            	numThreads = Integer.parseInt(atts.item(j).getNodeValue());
+            } else if(attName.compareToIgnoreCase("sweep") == 0) {
+            	setSweepValues(atts.item(j).getNodeValue());
             } else { //if you want to add more parameters, simply add more cases here
             	//throw new Exception("Unrecognized configuration parameter " + attName);
             }
@@ -277,6 +312,12 @@ public class Configuration {
 			            } else if(attName.compareToIgnoreCase("separator") == 0) {
 			            	//separator
 							separator = nodeAtts.item(j).getNodeValue();
+			            } else if(attName.compareToIgnoreCase("batchSize") == 0) {
+			            	//batch size for loading
+			            	batchSize = Integer.parseInt(nodeAtts.item(j).getNodeValue());
+			            } else if(attName.compareToIgnoreCase("fetchSize") == 0) {
+			            	//fetch size for queries
+			            	fetchSize = Integer.parseInt(nodeAtts.item(j).getNodeValue());
 			            }
 					}
 				} else if(child.getNodeName().compareToIgnoreCase("output") == 0) {
@@ -429,6 +470,75 @@ public class Configuration {
     	}
 	}
 	
+	/**
+	 * Sets the storage backend
+	 * @param storage a storage backend identifier
+	 */
+	public void setStorage(String storage) {
+		if(storage.compareToIgnoreCase("sqlite") == 0) {
+			this.storage = STORAGE_SQLITE;
+		} else if(storage.compareToIgnoreCase("memory") == 0) {
+			this.storage = STORAGE_MEMORY;
+		} else {
+			System.out.println("WARNING: Unrecognized storage, SQLite will be used for storage!!!");
+			this.storage = STORAGE_SQLITE;
+		}
+	}
+	
+	/**
+	 * Sets the privacy parameters to be swept
+	 * @param values comma separated list of privacy parameters (e.g., "2,5,10")
+	 */
+	public void setSweepValues(String values) {
+		String[] tokens = values.split(",");
+		sweepValues = new double[tokens.length];
+		for(int i = 0; i < tokens.length; i++) {
+			sweepValues[i] = Double.parseDouble(tokens[i].trim());
+		}
+	}
+	
+	/**
+	 * Gets the name of the privacy parameter of the anonymization method
+	 * @return "l" for l-diversity methods, "t" for t-closeness methods, "k" otherwise
+	 */
+	public String getPrivacyParameterName() {
+		if(anonMethod == METHOD_INCOGNITO_L || anonMethod == METHOD_ANATOMY) {
+			return "l";
+		} else if(anonMethod == METHOD_INCOGNITO_T) {
+			return "t";
+		} else {
+			return "k";
+		}
+	}
+	
+	/**
+	 * Sets the privacy parameter of the anonymization method (k, l or t)
+	 * @param value New value of the privacy parameter
+	 */
+	public void setPrivacyParameter(double value) {
+		if(anonMethod == METHOD_INCOGNITO_L || anonMethod == METHOD_ANATOMY) {
+			l = value;
+		} else if(anonMethod == METHOD_INCOGNITO_T) {
+			t = value;
+		} else {
+			k = (int) value;
+		}
+	}
+	
+	/**
+	 * Gets the privacy parameter of the anonymization method as a string
+	 * @return k, l or t (integral values without decimals)
+	 */
+	public String getPrivacyParameterString() {
+		if(anonMethod == METHOD_INCOGNITO_L || anonMethod == METHOD_ANATOMY) {
+			return (l == Math.floor(l)) ? Long.toString((long) l) : Double.toString(l);
+		} else if(anonMethod == METHOD_INCOGNITO_T) {
+			return (t == Math.floor(t)) ? Long.toString((long) t) : Double.toString(t);
+		} else {
+			return Integer.toString(k);
+		}
+	}
+	
 	/**
 	 * Sets the output format
 	 * @param format an output format identifier
@@ -481,6 +591,21 @@ public class Configuration {
 		if( (index = getOptionPos("-method", args)) >= 0) {
 			setMethod(args[index]);
 		}
+		if( (index = getOptionPos("-batchsize", args)) >= 0) {
+			batchSize = Integer.parseInt(args[index]);
+		}
+		if( (index = getOptionPos("-fetchsize", args)) >= 0) {
+			fetchSize = Integer.parseInt(args[index]);
+		}
+		if( (index = getOptionPos("-storage", args)) >= 0) {
+			setStorage(args[index]);
+		}
+		if( (index = getOptionPos("-threads", args)) >= 0) {
+			numThreads = Integer.parseInt(args[index]);
+		}
+		if( (index = getOptionPos("-sweep", args)) >= 0) {
+			setSweepValues(args[index]);
+		}
 	}
 	
 	/**
@@ -525,6 +650,10 @@ public class Configuration {
 		if(f.exists()) {
 			System.out.println("WARNING: Output file will be overwritten (" + outputFilename + ")");
 		}
+		//query results are paged by fetchSize rows, an empty page would end every scan
+		if(fetchSize <= 0) {
+			throw new Exception("Fetch size should be positive: " + fetchSize + "!!!");
+		}
 		//check if Anatomy is used with Anatomy outputFormat
 		if(anonMethod == METHOD_ANATOMY && outputFormat != OUTPUT_FORMAT_ANATOMY) {
 			System.out.println("WARNING: Output format set to Anatomy, since anonymization" +
@@ -2,6 +2,10 @@ package anonymizer;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.ListIterator;
 
 import sqlwrapper.QueryResult;
 import sqlwrapper.SQLWrapper;
@@ -18,11 +22,21 @@ import sqlwrapper.SqLiteSQLWrapper;
  */
 public class EquivalenceTable {
 	/** Quasi-identifier attributes*/
-	private QIDAttribute[] qid;
+	protected QIDAttribute[] qid;
 	/** Name of the table*/
-	private String tableName;
+	protected String tableName;
 	/** SQL connection/querying object*/
 	private SQLWrapper sqlwrapper;
+	/** Write-through index from concatenated generalized values to EIDs*/
+	protected Hashtable<String, Long> eidCache = new Hashtable<String, Long>();
+	/** Flag indicating whether two equivalences with the same generalized values 
+	 * were inserted (if so, the table is queried when the index misses)*/
+	protected boolean hasDuplicates = false;
+	/** Largest EID assigned so far*/
+	protected long maxEID = 0;
+	
+	/** Separator used when concatenating generalized values into index keys*/
+	protected static final String KEY_SEPARATOR = "|";
 	
 	/**
 	 * Class constructor
@@ -36,6 +50,19 @@ public class EquivalenceTable {
 		createTable();
 	}
 	
+	/**
+	 * Class constructor for subclasses that do not store the equivalences 
+	 * in the embedded database (no table is created)
+	 * @param qid Quasi-identifier attribtues
+	 * @param tableName Name of the table
+	 * @param sqlwrapper SQL connection/querying object (null if not needed)
+	 */
+	protected EquivalenceTable(QIDAttribute[] qid, String tableName, SQLWrapper sqlwrapper) {
+		this.qid = qid;
+		this.tableName = tableName;
+		this.sqlwrapper = sqlwrapper;
+	}
+	
 //	/**
 //	 * Class constructor (call only if the table is created before)
 //	 * @param name Name of the table to be fetched
@@ -55,7 +82,9 @@ public class EquivalenceTable {
 		//first, check if table exists
 		String select_SQL = "SELECT NAME FROM SQLITE_MASTER WHERE NAME = '" + tableName + "'";
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		if(result.hasNext()) { // if the table exists, drop table
+		boolean exists = result.hasNext();
+		result.close(); //release SQLITE_MASTER, otherwise tables cannot be dropped
+		if(exists) { // if the table exists, drop table
 			String drop_SQL = "DROP TABLE " + tableName;
 			sqlwrapper.execute(drop_SQL);
 		}
@@ -71,6 +100,53 @@ public class EquivalenceTable {
 		createTable_SQL += ")";
 		//execute update
 		sqlwrapper.execute(createTable_SQL);
+		
+		//index each qi-attribute (used for lookups and grouping)
+		for(int i = 0; i < qid.length; i++) {
+			String createIndex_SQL = "CREATE INDEX IDX_" + tableName + "_" + qid[i].index
+				+ " ON " + tableName + " (ATT_" + qid[i].index + ")";
+			sqlwrapper.execute(createIndex_SQL);
+		}
+	}
+	
+	/**
+	 * Builds the index key of a set of generalized values
+	 * @param genVals String representations of Interval objects (one per QI-attribute)
+	 * @return Concatenation of the generalized values
+	 */
+	public static String getKey(String[] genVals) {
+		StringBuilder key = new StringBuilder(genVals[0]);
+		for(int i = 1; i < genVals.length; i++) {
+			key.append(KEY_SEPARATOR).append(genVals[i]);
+		}
+		return key.toString();
+	}
+	
+	/**
+	 * Adds an equivalence to the index. If another equivalence with the same generalized
+	 * values exists, the older one is kept (as would a lookup on the table return)
+	 * @param genVals Generalized values of the equivalence
+	 * @param eid Equivalence ID
+	 */
+	protected void index(String[] genVals, Long eid) {
+		String key = getKey(genVals);
+		if(eidCache.containsKey(key)) {
+			hasDuplicates = true;
+		} else {
+			eidCache.put(key, eid);
+		}
+	}
+	
+	/**
+	 * Removes an equivalence from the index
+	 * @param genVals Generalized values of the equivalence
+	 * @param eid Equivalence ID
+	 */
+	protected void unindex(String[] genVals, Long eid) {
+		String key = getKey(genVals);
+		if(eid.equals(eidCache.get(key))) {
+			eidCache.remove(key);
+		}
 	}
 	
 	/**
@@ -81,6 +157,74 @@ public class EquivalenceTable {
 		return tableName;
 	}
 	
+	/**
+	 * Get the number of equivalences in the table
+	 * @return Number of equivalences
+	 */
+	public int size() throws SQLException{
+		String count_SQL = "SELECT COUNT(*) FROM " + tableName;
+		QueryResult result = sqlwrapper.executeQuery(count_SQL);
+		int count = 0;
+		if(result.hasNext()) {
+			count = ((ResultSet) result.next()).getInt(1);
+		}
+		result.close();
+		return count;
+	}
+	
+	/**
+	 * Get the IDs of all equivalences in the table (in insertion order)
+	 * @return Array of equivalence IDs
+	 */
+	public long[] getEIDs() throws SQLException{
+		String select_SQL = "SELECT EID FROM " + tableName;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedList<Long> eids = new LinkedList<Long>();
+		while(result.hasNext()) {
+			eids.add(((ResultSet) result.next()).getLong(1));
+		}
+		long[] retVal = new long[eids.size()];
+		ListIterator<Long> iter = eids.listIterator();
+		for(int i = 0; i < retVal.length; i++) {
+			retVal[i] = iter.next();
+		}
+		return retVal;
+	}
+	
+	/**
+	 * Get the ID of the first equivalence in the table (in insertion order)
+	 * @return EID of the first equivalence or -1 if the table is empty
+	 */
+	public long peekEID() throws SQLException{
+		String select_SQL = "SELECT EID FROM " + tableName + " LIMIT 1 OFFSET 0";
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		long eid = -1;
+		if(result.hasNext()) {
+			eid = ((ResultSet) result.next()).getLong(1);
+		}
+		result.close(); //release the table (open statements block later drops)
+		return eid;
+	}
+	
+	/**
+	 * Get the number of distinct generalized values of a quasi-identifier attribute
+	 * @param qiIndex Position of the attribute within the quasi-identifier attributes
+	 * (i.e., not the index within the original source)
+	 * @return Number of distinct generalized values
+	 */
+	public int countDistinct(int qiIndex) throws SQLException{
+		String count_SQL = "SELECT COUNT(*) FROM "
+			+ "(SELECT COUNT(*) FROM " + tableName + " GROUP BY"
+			+ " ATT_" + qid[qiIndex].index + ") AS T";
+		QueryResult result = sqlwrapper.executeQuery(count_SQL);
+		int count = 0;
+		if(result.hasNext()) {
+			count = ((ResultSet) result.next()).getInt(1);
+		}
+		result.close();
+		return count;
+	}
+	
 	/**
 	 * Get the equivalence ID for the provided set of generalized values
 	 * @param genVals String representations of Interval objects (one per QI-attribute)
@@ -91,6 +235,13 @@ public class EquivalenceTable {
 		if(genVals.length != qid.length) {
 			return new Long(-1);
 		}
+		//check the index first
+		Long eid = eidCache.get(getKey(genVals));
+		if(eid != null) {
+			return eid;
+		} else if(!hasDuplicates) { //the index is complete
+			return new Long(-1);
+		}
 		//the selection query, to be issued to the database
 		String select_SQL = "SELECT EID FROM " + tableName + " WHERE ";
 		for(int i = 0; i < qid.length; i++) {
@@ -100,11 +251,13 @@ public class EquivalenceTable {
 		select_SQL = select_SQL.substring(0, select_SQL.length()-4);
 		//execute query
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		eid = new Long(-1);
 		if(result.hasNext()) {
-			return ((ResultSet) result.next()).getLong(1);
-		} else {
-			return new Long(-1);
+			eid = ((ResultSet) result.next()).getLong(1);
+			eidCache.put(getKey(genVals), eid);
 		}
+		result.close();
+		return eid;
 	}
 	
 	/**
@@ -117,16 +270,35 @@ public class EquivalenceTable {
 		//execute query
 		QueryResult result = sqlwrapper.executeQuery(select_SQL);
 		
+		String[] retVal = null;
 		if(result.hasNext()) {
-			String[] retVal = new String[qid.length];
+			retVal = new String[qid.length];
 			ResultSet rs = (ResultSet) result.next();
 			for(int i = 0; i < retVal.length; i++) {
 				retVal[i] = rs.getString(i+2); //+1 because rs indices start with 1, +1 to omit the EID column
 			}
-			return retVal;
-		} else {
-			return null;
 		}
+		result.close();
+		return retVal;
+	}
+	
+	/**
+	 * Get the generalizations of all equivalences with a single scan of the table
+	 * @return Generalized values of each equivalence, keyed by EID (in insertion order)
+	 */
+	public LinkedHashMap<Long, String[]> getGeneralizations() throws SQLException{
+		String select_SQL = "SELECT * FROM " + tableName;
+		QueryResult result = sqlwrapper.executeQuery(select_SQL);
+		LinkedHashMap<Long, String[]> retVal = new LinkedHashMap<Long, String[]>();
+		while(result.hasNext()) {
+			ResultSet rs = (ResultSet) result.next();
+			String[] genVals = new String[qid.length];
+			for(int i = 0; i < genVals.length; i++) {
+				genVals[i] = rs.getString(i+2); //+1 because rs indices start with 1, +1 to omit the EID column
+			}
+			retVal.put(rs.getLong(1), genVals);
+		}
+		return retVal;
 	}
 	
 	/**
@@ -136,6 +308,11 @@ public class EquivalenceTable {
 	 * @param newVals new generalization values
 	 */
 	public void setGeneralization(double eid, String[] newVals) throws SQLException {
+		String[] oldVals = getGeneralization(eid);
+		if(oldVals != null) {
+			unindex(oldVals, (long) eid);
+			index(newVals, (long) eid);
+		}
 		String update_SQL = "UPDATE " + tableName + " SET ";
 		update_SQL += "ATT_" + qid[0].index + " = '" + newVals[0] + "'";
 		for(int i = 1; i < qid.length; i++) {
@@ -146,21 +323,17 @@ public class EquivalenceTable {
 	}
 	
 	/**
-	 * Inserts a nwe tuple
-	 * @param vals Values of the tuple, as read from the data source 
-	 * (i.e., before any generalization)
+	 * Inserts a new tuple
+	 * @param qiVals Encoded qi-attribute values of the tuple (i.e., parsed numerical values
+	 * and mapped categorical values, before any generalization)
 	 * @return Equivalence id of the new or existing equivalence
 	 * @throws Exception
 	 */
-	public Long insertTuple(String[] vals) throws Exception {
-		//get generalization values
+	public Long insertTuple(double[] qiVals) throws Exception {
+		//get generalization values (same as Interval.toString of the value)
 		String[] genVals = new String[qid.length];
 		for(int i =0; i < genVals.length; i++) {
-			String attVal = vals[qid[i].index];
-			if(qid[i].catDomMapping != null) {
-				attVal = qid[i].catDomMapping.get(attVal).toString();
-			} 
-			genVals[i] = new Interval(attVal).toString();
+			genVals[i] = "[" + Double.toString(qiVals[i]) + "]";
 		}
 		//check if an equivalence matching genVals already exists
 		Long eid = getEID(genVals); 
@@ -178,14 +351,7 @@ public class EquivalenceTable {
 	 * @throws SQLExpcetion
 	 */
 	public Long insertEquivalence(String[] genVals) throws SQLException{
-		Long eid = new Long(0);
-		//get the largest ID on the table
-		String select_SQL = "SELECT MAX(EID) FROM " + tableName;
-		QueryResult result = sqlwrapper.executeQuery(select_SQL);
-		if(result.hasNext()) {
-			eid = ((ResultSet) result.next()).getLong(1);
-			eid++;
-		}
+		Long eid = new Long(++maxEID); //the table is created by this object, no need to read MAX(EID)
 		
 		String insert_SQL = "INSERT INTO " + tableName + " VALUES ( " + eid.toString() + ", ";
 		for(int i = 0; i < genVals.length; i++) {
@@ -195,6 +361,7 @@ public class EquivalenceTable {
 		insert_SQL = insert_SQL.substring(0, insert_SQL.length()-2);
 		insert_SQL += ")";
 		sqlwrapper.execute(insert_SQL);
+		index(genVals, eid);
 		return eid;
 	}
 	
@@ -203,6 +370,14 @@ public class EquivalenceTable {
 	 * @param eid Equivalence ID of the equivalence to be deleted
 	 */
 	public void deleteEquivalence(Long eid) {
+		try {
+			String[] genVals = getGeneralization(eid);
+			if(genVals != null) {
+				unindex(genVals, eid);
+			}
+		} catch(SQLException e) {
+			e.printStackTrace();
+		}
 		String delete_SQL = "DELETE FROM " + tableName + " WHERE EID = " + eid;
 		sqlwrapper.execute(delete_SQL);
 	}
@@ -211,6 +386,7 @@ public class EquivalenceTable {
 	 * Drops this table from the database
 	 */
 	public void drop() {
+		eidCache.clear();
 		String drop_SQL = "DROP TABLE " + tableName;
 		sqlwrapper.execute(drop_SQL);
 	}
@@ -82,6 +82,25 @@ public class Interval {
 		}
 	}
 	
+	/**
+	 * Class constructor specifying the bounds, without parsing any strings
+	 * @param low lower bound of the interval
+	 * @param high upper bound of the interval
+	 * @param incType inclusion type (e.g., TYPE_IncLowExcHigh)
+	 */
+	public Interval(double low, double high, int incType) throws Exception{
+		this.low = low;
+		this.high = high;
+		this.incType = incType;
+		boolean incLow = (incType == TYPE_IncLowExcHigh || incType == TYPE_IncLowIncHigh);
+		boolean incHigh = (incType == TYPE_ExcLowIncHigh || incType == TYPE_IncLowIncHigh);
+		str = (incLow ? "[" : "(") + low + ":" + high + (incHigh ? "]" : ")");
+		
+		if(low > high || (low == high && incType == TYPE_ExcLowExcHigh)) {
+			throw new Exception("Empty interval (" + str + ")!");
+		}
+	}
+	
 	/**
 	 * Compares numeric values to intervals
 	 * @param val numeric value that can be parsed into a double
@@ -192,14 +211,14 @@ public class Interval {
 	public Interval[] splitInclusive(double value) throws Exception{
 		Interval[] retVal = new Interval[2];
 		if(incLowerBound()) { //determine left boundary condition (inc/exc)
-			retVal[0] = new Interval("[" + low + ":" + value + "]");
+			retVal[0] = new Interval(low, value, TYPE_IncLowIncHigh);
 		} else {
-			retVal[0] = new Interval("(" + low + ":" + value + "]");
+			retVal[0] = new Interval(low, value, TYPE_ExcLowIncHigh);
 		}
 		if(incUpperBound()) { //determine right boundary condition (inc/exc)
-			retVal[1] = new Interval("(" + value + ":" + high + "]");
+			retVal[1] = new Interval(value, high, TYPE_ExcLowIncHigh);
 		} else {
-			retVal[1] = new Interval("(" + value + ":" + high + ")");			
+			retVal[1] = new Interval(value, high, TYPE_ExcLowExcHigh);
 		}
 		return retVal;
 	}
@@ -0,0 +1,646 @@
+package anonymizer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Main memory implementation of the anonymized records table. No SQL is issued; records are
+ * stored in columnar form (one primitive array for RIDs, one for EIDs and one for each
+ * attribute) and an index from each EID to the positions of its records is maintained.
+ * <p/>
+ * Records are never moved within the arrays. Deleted records are marked with an invalid
+ * EID and skipped during scans, so positions (and therefore the order of records) remain
+ * stable just like the row order of the embedded database.
+ * <p/>
+ * Use only if all records fit into the memory (see Configuration.STORAGE_MEMORY).
+ */
+public class MemAnonRecordTable extends AnonRecordTable {
+	/** EID value that marks a deleted record*/
+	private static final long DELETED = Long.MIN_VALUE;
+
+	/** Initial number of records that can be stored without growing the arrays*/
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/** Number of used positions (including deleted records)*/
+	private int numPositions;
+
+	/** Number of records in the table (excluding deleted records)*/
+	private int numRecords;
+
+	/** Record IDs*/
+	private long[] rids;
+
+	/** Equivalence IDs*/
+	private long[] eids;
+
+	/** Attribute values, one column per attribute (qi-attributes first, then sensitive attributes)*/
+	private double[][] atts;
+
+	/** Position of each record ID (-1 if the record is not in this table)*/
+	private int[] ridPositions;
+
+	/** Largest record ID stored so far*/
+	private long maxRID;
+
+	/** Positions of the records of each equivalence*/
+	private HashMap<Long, Bucket> eidIndex;
+
+	/**
+	 * Positions of the records generalized to an equivalence. Positions of deleted records
+	 * may remain in the list; such positions are skipped since their EID no longer matches.
+	 */
+	private static class Bucket {
+		/** Positions of the records*/
+		int[] positions = new int[4];
+		/** Number of used entries of positions*/
+		int length = 0;
+		/** Number of records in the equivalence*/
+		int size = 0;
+
+		void add(int position) {
+			if(length == positions.length) {
+				positions = Arrays.copyOf(positions, 2 * length);
+			}
+			positions[length++] = position;
+			size++;
+		}
+	}
+
+	/**
+	 * Class constructor
+	 * @param qidIndices Indices of quasi-identifier attributes
+	 * @param sensIndices Indices of sensitive attributes
+	 * @param tableName Name of the table
+	 */
+	public MemAnonRecordTable(Integer[] qidIndices, Integer[] sensIndices, String tableName) {
+		super(qidIndices, sensIndices, tableName, null);
+		init();
+	}
+
+	/**
+	 * Allocates empty arrays and the EID index
+	 */
+	private void init() {
+		numPositions = 0;
+		numRecords = 0;
+		maxRID = 0;
+		rids = new long[INITIAL_CAPACITY];
+		eids = new long[INITIAL_CAPACITY];
+		atts = new double[qidIndices.length + sensIndices.length][INITIAL_CAPACITY];
+		ridPositions = new int[INITIAL_CAPACITY];
+		Arrays.fill(ridPositions, -1);
+		eidIndex = new HashMap<Long, Bucket>();
+	}
+
+	/**
+	 * Get the column that stores the specified attribute
+	 * @param att An attribute index
+	 * @return Column index within atts
+	 */
+	private int getColumn(int att) {
+		for(int i = 0; i < qidIndices.length; i++) {
+			if(qidIndices[i] == att) {
+				return i;
+			}
+		}
+		for(int i = 0; i < sensIndices.length; i++) {
+			if(sensIndices[i] == att) {
+				return qidIndices.length + i;
+			}
+		}
+		throw new IllegalArgumentException("No such attribute in " + tableName + ": ATT_" + att);
+	}
+
+	/**
+	 * Appends a record to the arrays (growing them if necessary) and the EID index; 
+	 * attribute values are left to the caller
+	 * @param rid Record ID
+	 * @param eid Equivalence ID
+	 * @return Position of the record
+	 */
+	private int addPosition(long rid, long eid) {
+		if(numPositions == rids.length) {
+			int capacity = 2 * rids.length;
+			rids = Arrays.copyOf(rids, capacity);
+			eids = Arrays.copyOf(eids, capacity);
+			for(int i = 0; i < atts.length; i++) {
+				atts[i] = Arrays.copyOf(atts[i], capacity);
+			}
+		}
+		int position = numPositions++;
+		rids[position] = rid;
+		eids[position] = eid;
+		setRIDPosition(rid, position);
+		getBucket(eid).add(position);
+		if(rid > maxRID) {
+			maxRID = rid;
+		}
+		numRecords++;
+		return position;
+	}
+
+	/**
+	 * Appends a record to the arrays and the EID index
+	 * @param rid Record ID
+	 * @param eid Equivalence ID
+	 * @param from Table that holds the attribute values
+	 * @param position Position of the attribute values within from
+	 */
+	private void append(long rid, long eid, MemAnonRecordTable from, int position) {
+		int to = addPosition(rid, eid);
+		for(int i = 0; i < atts.length; i++) {
+			atts[i][to] = from.atts[i][position];
+		}
+	}
+
+	/**
+	 * Updates the position of a record ID
+	 * @param rid Record ID
+	 * @param position New position (-1 if deleted)
+	 */
+	private void setRIDPosition(long rid, int position) {
+		if(rid >= ridPositions.length) {
+			int oldLength = ridPositions.length;
+			ridPositions = Arrays.copyOf(ridPositions, (int) Math.max(2 * oldLength, rid + 1));
+			Arrays.fill(ridPositions, oldLength, ridPositions.length, -1);
+		}
+		ridPositions[(int) rid] = position;
+	}
+
+	/**
+	 * Get the position of a record ID
+	 * @param rid Record ID
+	 * @return Position of the record or -1 if not found
+	 */
+	private int getRIDPosition(long rid) {
+		if(rid < 0 || rid >= ridPositions.length) {
+			return -1;
+		}
+		return ridPositions[(int) rid];
+	}
+
+	/**
+	 * Get the bucket of an equivalence, creating an empty one if necessary
+	 * @param eid Equivalence ID
+	 * @return Bucket of the equivalence
+	 */
+	private Bucket getBucket(long eid) {
+		Bucket b = eidIndex.get(eid);
+		if(b == null) {
+			b = new Bucket();
+			eidIndex.put(eid, b);
+		}
+		return b;
+	}
+
+	/**
+	 * Deletes the record at the specified position
+	 * @param position Position of the record
+	 */
+	private void delete(int position) {
+		Bucket b = eidIndex.get(eids[position]);
+		b.size--;
+		if(b.size == 0) {
+			eidIndex.remove(eids[position]);
+		}
+		eids[position] = DELETED;
+		setRIDPosition(rids[position], -1);
+		numRecords--;
+	}
+
+	/**
+	 * Get the positions of the records of an equivalence
+	 * @param eid Equivalence ID
+	 * @return Positions in ascending order (empty if the equivalence does not exist)
+	 */
+	private int[] getPositions(long eid) {
+		Bucket b = eidIndex.get(eid);
+		if(b == null) {
+			return new int[0];
+		}
+		int[] retVal = new int[b.size];
+		int count = 0;
+		for(int i = 0; i < b.length; i++) {
+			if(eids[b.positions[i]] == eid) {
+				retVal[count++] = b.positions[i];
+			}
+		}
+		Arrays.sort(retVal);
+		return retVal;
+	}
+
+	/**
+	 * Computes the distinct values and counts of a column over the specified positions
+	 * @param positions Positions of the records
+	 * @param column Column index within atts
+	 * @return (value, count) pairs in ascending order of values
+	 */
+	private double[][] countValues(int[] positions, int column) {
+		double[] vals = new double[positions.length];
+		for(int i = 0; i < vals.length; i++) {
+			vals[i] = atts[column][positions[i]];
+		}
+		Arrays.sort(vals);
+		LinkedList<double[]> counts = new LinkedList<double[]>();
+		int i = 0;
+		while(i < vals.length) {
+			int j = i + 1;
+			while(j < vals.length && vals[j] == vals[i]) {
+				j++;
+			}
+			double[] entry = new double[2];
+			entry[0] = vals[i]; //first element will be the value
+			entry[1] = j - i; //second will be the count
+			counts.add(entry);
+			i = j;
+		}
+		return counts.toArray(new double[0][]);
+	}
+
+	/**
+	 * Get the positions of all records in the table
+	 * @return Positions in ascending order
+	 */
+	private int[] getAllPositions() {
+		int[] retVal = new int[numRecords];
+		int count = 0;
+		for(int i = 0; i < numPositions; i++) {
+			if(eids[i] != DELETED) {
+				retVal[count++] = i;
+			}
+		}
+		return retVal;
+	}
+
+	public int getEquivalenceSize(long eid) {
+		Bucket b = eidIndex.get(eid);
+		if(b == null) {
+			return 0;
+		}
+		return b.size;
+	}
+
+	public void insert(long eid, double[] qiVals, double[] sensVals) {
+		insert(maxRID + 1, eid, qiVals, sensVals);
+	}
+
+	public void insert(long rid, long eid, double[] qiVals, double[] sensVals) {
+		int position = addPosition(rid, eid);
+		for(int i = 0; i < qiVals.length; i++) {
+			atts[i][position] = qiVals[i];
+		}
+		for(int i = 0; i < sensVals.length; i++) {
+			atts[qiVals.length + i][position] = sensVals[i];
+		}
+	}
+
+	public int size() {
+		return numRecords;
+	}
+
+	public long getEID(long rid) {
+		int position = getRIDPosition(rid);
+		if(position < 0) {
+			return -1;
+		}
+		return eids[position];
+	}
+
+	public double[] getQIValues(long rid) {
+		int position = getRIDPosition(rid);
+		if(position < 0) {
+			return null;
+		}
+		double[] qiVals = new double[qidIndices.length];
+		for(int i = 0; i < qiVals.length; i++) {
+			qiVals[i] = atts[i][position];
+		}
+		return qiVals;
+	}
+
+	public double[][] getEquivalenceQIValues(long eid) {
+		int[] positions = getPositions(eid);
+		double[][] rows = new double[positions.length][qidIndices.length];
+		for(int i = 0; i < positions.length; i++) {
+			for(int j = 0; j < qidIndices.length; j++) {
+				rows[i][j] = atts[j][positions[i]];
+			}
+		}
+		return rows;
+	}
+
+	public double[][] getEquivalenceRecords(long eid) {
+		int[] positions = getPositions(eid);
+		double[][] rows = new double[positions.length][qidIndices.length + 1];
+		for(int i = 0; i < positions.length; i++) {
+			rows[i][0] = rids[positions[i]];
+			for(int j = 0; j < qidIndices.length; j++) {
+				rows[i][j+1] = atts[j][positions[i]];
+			}
+		}
+		Arrays.sort(rows, new java.util.Comparator<double[]>() {
+			public int compare(double[] a, double[] b) {
+				return (a[0] < b[0]) ? -1 : ((a[0] == b[0]) ? 0 : 1);
+			}
+		});
+		return rows;
+	}
+
+	public RecordIterator getRecords() {
+		return new RecordIterator() {
+			/** Next record ID to be returned*/
+			private long rid = nextRID(1);
+			
+			private long nextRID(long from) {
+				while(from <= maxRID && getRIDPosition(from) < 0) {
+					from++;
+				}
+				return from;
+			}
+			
+			public boolean hasNext() {
+				return rid <= maxRID;
+			}
+			
+			public double[] next() {
+				int position = getRIDPosition(rid);
+				double[] row = new double[qidIndices.length + 2];
+				row[0] = rid;
+				row[1] = eids[position];
+				for(int i = 0; i < qidIndices.length; i++) {
+					row[i+2] = atts[i][position];
+				}
+				rid = nextRID(rid + 1);
+				return row;
+			}
+		};
+	}
+
+	public double[][] getValueCounts(long eid, int att) {
+		return countValues(getPositions(eid), getColumn(att));
+	}
+
+	public double[][] getValueCounts(int att) {
+		return countValues(getAllPositions(), getColumn(att));
+	}
+
+	public long[][] getEquivalenceSizes() {
+		long[] eidArray = getSortedEIDs();
+		long[][] sizes = new long[eidArray.length][2];
+		for(int i = 0; i < eidArray.length; i++) {
+			sizes[i][0] = eidArray[i];
+			sizes[i][1] = eidIndex.get(eidArray[i]).size;
+		}
+		return sizes;
+	}
+
+	public double[][] getEquivalenceValueCounts(int att) {
+		int column = getColumn(att);
+		long[] eidArray = getSortedEIDs();
+		LinkedList<double[]> counts = new LinkedList<double[]>();
+		for(int i = 0; i < eidArray.length; i++) {
+			double[][] valueCounts = countValues(getPositions(eidArray[i]), column);
+			for(int j = 0; j < valueCounts.length; j++) {
+				double[] entry = new double[3];
+				entry[0] = eidArray[i]; //EID
+				entry[1] = valueCounts[j][0]; //value
+				entry[2] = valueCounts[j][1]; //count
+				counts.add(entry);
+			}
+		}
+		return counts.toArray(new double[0][]);
+	}
+
+	/**
+	 * Get the IDs of all equivalences that contain records
+	 * @return EIDs in ascending order
+	 */
+	private long[] getSortedEIDs() {
+		long[] eidArray = new long[eidIndex.size()];
+		Iterator<Long> iter = eidIndex.keySet().iterator();
+		for(int i = 0; i < eidArray.length; i++) {
+			eidArray[i] = iter.next();
+		}
+		Arrays.sort(eidArray);
+		return eidArray;
+	}
+
+	public long getRIDWithValue(int att, double value, int offset) {
+		int column = getColumn(att);
+		for(int i = 0; i < numPositions; i++) {
+			if(eids[i] != DELETED && atts[column][i] == value) {
+				if(offset == 0) {
+					return rids[i];
+				}
+				offset--;
+			}
+		}
+		return -1;
+	}
+
+	public long[] getEIDsWithout(int att, double value) {
+		int column = getColumn(att);
+		long[] retVal = new long[eidIndex.size()];
+		int count = 0;
+		Iterator<Map.Entry<Long, Bucket>> iter = eidIndex.entrySet().iterator();
+		while(iter.hasNext()) {
+			Map.Entry<Long, Bucket> entry = iter.next();
+			long eid = entry.getKey();
+			Bucket b = entry.getValue();
+			boolean found = false;
+			for(int i = 0; !found && i < b.length; i++) {
+				int position = b.positions[i];
+				found = (eids[position] == eid && atts[column][position] == value);
+			}
+			if(!found) {
+				retVal[count++] = eid;
+			}
+		}
+		retVal = Arrays.copyOf(retVal, count);
+		Arrays.sort(retVal);
+		return retVal;
+	}
+
+	public boolean checkKAnonymityRequirement(int k) {
+		Iterator<Bucket> iter = eidIndex.values().iterator();
+		while(iter.hasNext()) {
+			int size = iter.next().size;
+			if(size > 0 && size < k) {
+				return false;
+			}
+		}
+		return true; //no equivalences, therefore no records, therefore k-anonymous
+	}
+
+	public boolean checkKAnonymityRequirement(int k, int suppThreshold) {
+		int sumLessThanK = 0;
+		Iterator<Bucket> iter = eidIndex.values().iterator();
+		while(iter.hasNext()) {
+			int size = iter.next().size;
+			if(size > 0 && size < k) {
+				sumLessThanK += size;
+				if(sumLessThanK > suppThreshold) {
+					return false; //too many records for suppression, not ready yet
+				}
+			}
+		}
+		return true;
+	}
+
+	public LinkedList<Long> getSuppressionList(int k, int suppThreshold) {
+		//collect (eid, size) pairs of equivalences with less than k generalized tuples
+		LinkedList<long[]> smallEquivalences = new LinkedList<long[]>();
+		Iterator<Map.Entry<Long, Bucket>> iter = eidIndex.entrySet().iterator();
+		while(iter.hasNext()) {
+			Map.Entry<Long, Bucket> entry = iter.next();
+			if(entry.getValue().size < k) {
+				long[] pair = new long[2];
+				pair[0] = entry.getKey();
+				pair[1] = entry.getValue().size;
+				smallEquivalences.add(pair);
+			}
+		}
+		long[][] pairs = smallEquivalences.toArray(new long[0][]);
+		Arrays.sort(pairs, new java.util.Comparator<long[]>() {
+			public int compare(long[] a, long[] b) {
+				return (a[1] < b[1]) ? -1 : ((a[1] == b[1]) ? 0 : 1);
+			}
+		});
+
+		int sumEquivalenceSizes = 0;
+		LinkedList<Long> equivalencesToBeSuppressed = new LinkedList<Long>();
+		for(int i = 0; i < pairs.length; i++) {
+			equivalencesToBeSuppressed.add(pairs[i][0]);
+			sumEquivalenceSizes += pairs[i][1];
+			if(suppThreshold > 0 && sumEquivalenceSizes > suppThreshold) {
+				return null; //too many records for suppression, not ready yet
+			}
+		}
+		return equivalencesToBeSuppressed;
+	}
+
+	boolean evaluate(SensitiveValueEvaluator evaluator, int sensIndex) {
+		int column = getColumn(sensIndex);
+		long[] eidArray = getSortedEIDs();
+		for(int e = 0; e < eidArray.length; e++) {
+			double[][] counts = countValues(getPositions(eidArray[e]), column);
+			for(int i = 0; i < counts.length; i++) {
+				if(!evaluator.add(eidArray[e], counts[i][0], (int) counts[i][1])) {
+					return false;
+				}
+			}
+		}
+		return evaluator.finish();
+	}
+
+	public void moveRecords(Long fromEID, Long toEID) {
+		if(fromEID.equals(toEID)) {
+			return;
+		}
+		Bucket from = eidIndex.remove(fromEID);
+		if(from == null) {
+			return;
+		}
+		Bucket to = getBucket(toEID);
+		for(int i = 0; i < from.length; i++) {
+			int position = from.positions[i];
+			if(eids[position] == fromEID) {
+				eids[position] = toEID;
+				to.add(position);
+			}
+		}
+	}
+
+	public void moveRecords(long fromEID, long toEID, Interval range, int att) {
+		if(fromEID == toEID) {
+			return;
+		}
+		int column = getColumn(att);
+		Bucket from = eidIndex.remove(fromEID);
+		if(from == null) {
+			return;
+		}
+		Bucket remaining = new Bucket();
+		Bucket to = getBucket(toEID);
+		for(int i = 0; i < from.length; i++) {
+			int position = from.positions[i];
+			if(eids[position] != fromEID) {
+				continue; //deleted record
+			}
+			if(range.compareTo(atts[column][position])) {
+				eids[position] = toEID;
+				to.add(position);
+			} else {
+				remaining.add(position);
+			}
+		}
+		if(remaining.size > 0) {
+			eidIndex.put(fromEID, remaining);
+		}
+		if(to.size == 0) {
+			eidIndex.remove(toEID);
+		}
+	}
+
+	public void copyFrom(AnonRecordTable that, Long oldEID, Long newEID) {
+		MemAnonRecordTable from = (MemAnonRecordTable) that;
+		int[] positions = from.getPositions(oldEID);
+		for(int i = 0; i < positions.length; i++) {
+			append(from.rids[positions[i]], newEID, from, positions[i]);
+		}
+	}
+
+	public void copyFrom(AnonRecordTable that, Hashtable<Long, Long> eidMapping) {
+		MemAnonRecordTable from = (MemAnonRecordTable) that;
+		for(int i = 0; i < from.numPositions; i++) {
+			if(from.eids[i] == DELETED) {
+				continue;
+			}
+			Long newEID = eidMapping.get(from.eids[i]);
+			if(newEID != null) {
+				append(from.rids[i], newEID, from, i);
+			}
+		}
+	}
+
+	public void remapEIDs(Hashtable<Long, Long> eidMapping) {
+		eidIndex = new HashMap<Long, Bucket>();
+		for(int i = 0; i < numPositions; i++) {
+			if(eids[i] == DELETED) {
+				continue;
+			}
+			Long newEID = eidMapping.get(eids[i]);
+			if(newEID != null) {
+				eids[i] = newEID;
+			}
+			getBucket(eids[i]).add(i);
+		}
+	}
+
+	public void cutFrom(AnonRecordTable that, Long oldEID, Long newEID) {
+		MemAnonRecordTable from = (MemAnonRecordTable) that;
+		int[] positions = from.getPositions(oldEID);
+		for(int i = 0; i < positions.length; i++) {
+			append(from.rids[positions[i]], newEID, from, positions[i]);
+			from.delete(positions[i]);
+		}
+	}
+
+	public void cutRecord(AnonRecordTable that, Long RID, Long newEID) {
+		MemAnonRecordTable from = (MemAnonRecordTable) that;
+		int position = from.getRIDPosition(RID);
+		if(position < 0) {
+			return;
+		}
+		append(RID, newEID, from, position);
+		from.delete(position);
+	}
+
+	public void drop() {
+		init();
+	}
+}
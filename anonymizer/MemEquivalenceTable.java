@@ -0,0 +1,126 @@
+package anonymizer;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Main memory implementation of the equivalence table. No SQL is issued; equivalences are
+ * kept in insertion order (mimicking the row order of the embedded database) and looked up
+ * through the hash index of EquivalenceTable.
+ * <p/>
+ * Use only if all equivalences fit into the memory (see Configuration.STORAGE_MEMORY).
+ */
+public class MemEquivalenceTable extends EquivalenceTable {
+	/** Generalized values of each equivalence, in insertion order*/
+	private LinkedHashMap<Long, String[]> generalizations;
+
+	/**
+	 * Class constructor
+	 * @param qid Quasi-identifier attribtues
+	 * @param tableName Name of the table
+	 */
+	public MemEquivalenceTable(QIDAttribute[] qid, String tableName) {
+		super(qid, tableName, null);
+		generalizations = new LinkedHashMap<Long, String[]>();
+	}
+
+	public int size() {
+		return generalizations.size();
+	}
+
+	public long[] getEIDs() {
+		long[] retVal = new long[generalizations.size()];
+		Iterator<Long> iter = generalizations.keySet().iterator();
+		for(int i = 0; i < retVal.length; i++) {
+			retVal[i] = iter.next();
+		}
+		return retVal;
+	}
+
+	public long peekEID() {
+		if(generalizations.isEmpty()) {
+			return -1;
+		}
+		return generalizations.keySet().iterator().next();
+	}
+
+	public int countDistinct(int qiIndex) {
+		HashSet<String> distinct = new HashSet<String>();
+		Iterator<String[]> iter = generalizations.values().iterator();
+		while(iter.hasNext()) {
+			distinct.add(iter.next()[qiIndex]);
+		}
+		return distinct.size();
+	}
+
+	public Long getEID(String[] genVals) {
+		//validate input
+		if(genVals.length != qid.length) {
+			return new Long(-1);
+		}
+		String key = getKey(genVals);
+		Long eid = eidCache.get(key);
+		if(eid != null) {
+			return eid;
+		} else if(hasDuplicates) { //the oldest duplicate might have been deleted, scan
+			Iterator<Long> iter = generalizations.keySet().iterator();
+			while(iter.hasNext()) {
+				eid = iter.next();
+				if(getKey(generalizations.get(eid)).equals(key)) {
+					eidCache.put(key, eid);
+					return eid;
+				}
+			}
+		}
+		return new Long(-1);
+	}
+
+	public String[] getGeneralization(double eid) {
+		String[] genVals = generalizations.get((long) eid);
+		if(genVals == null) {
+			return null;
+		}
+		return genVals.clone(); //callers are allowed to modify the returned array
+	}
+
+	public LinkedHashMap<Long, String[]> getGeneralizations() {
+		LinkedHashMap<Long, String[]> retVal = new LinkedHashMap<Long, String[]>();
+		Iterator<Map.Entry<Long, String[]>> iter = generalizations.entrySet().iterator();
+		while(iter.hasNext()) {
+			Map.Entry<Long, String[]> entry = iter.next();
+			retVal.put(entry.getKey(), entry.getValue().clone());
+		}
+		return retVal;
+	}
+
+	public void setGeneralization(double eid, String[] newVals) {
+		String[] oldVals = generalizations.get((long) eid);
+		if(oldVals == null) {
+			return;
+		}
+		unindex(oldVals, (long) eid);
+		generalizations.put((long) eid, newVals.clone());
+		index(newVals, (long) eid);
+	}
+
+	public Long insertEquivalence(String[] genVals) {
+		Long eid = new Long(++maxEID);
+		generalizations.put(eid, genVals.clone());
+		index(genVals, eid);
+		return eid;
+	}
+
+	public void deleteEquivalence(Long eid) {
+		String[] genVals = generalizations.remove(eid);
+		if(genVals != null) {
+			unindex(genVals, eid);
+		}
+	}
+
+	public void drop() {
+		generalizations.clear();
+		eidCache.clear();
+	}
+}
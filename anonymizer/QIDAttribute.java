@@ -1,5 +1,7 @@
 package anonymizer;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.LinkedList;
@@ -34,6 +36,26 @@ public class QIDAttribute {
 	/** List of leaf intervals in the VGH*/
 	private LinkedList<Interval> leafIntervals = null;
 	
+	/** Values of VGH nodes, indexed by node IDs (assigned by a breadth-first traversal 
+	 * of the VGH, the suppression value gets 0)*/
+	private String[] nodeValues = null;
+	
+	/** Maps each VGH node to its node ID*/
+	private Hashtable<String, Integer> nodeIDs = null;
+	
+	/** ancestors[h][id] is the ID of the node obtained by generalizing node id h times 
+	 * (the last row maps every node to the suppression value)*/
+	private int[][] ancestors = null;
+	
+	/** Leaf intervals in ascending order of lower bounds*/
+	private Interval[] sortedLeaves = null;
+	
+	/** Lower bounds of sortedLeaves (for binary search)*/
+	private double[] sortedLeafLows = null;
+	
+	/** Node IDs of sortedLeaves*/
+	private int[] sortedLeafIDs = null;
+	
 	/**
 	 * Class constructor
 	 * @param att The node that describes a QID attribute in the configuration file
@@ -156,6 +178,8 @@ public class QIDAttribute {
 			}	
 		}
 		
+		compileVGH();
+		
 		//further input validation: if the attribute is categorical, 
 		// check whether all numeric values map to a parent
 		if(catDomMapping != null) {
@@ -170,6 +194,161 @@ public class QIDAttribute {
 		}
 	}
 	
+	/**
+	 * Compiles the VGH into integer node IDs, a dense ancestor table and an array of 
+	 * leaf intervals sorted on their lower bounds, so that generalizations do not require
+	 * parsing values or scanning the leaves
+	 */
+	private void compileVGH() throws Exception{
+		//assign node IDs by a breadth-first traversal
+		LinkedList<String> nodes = new LinkedList<String>();
+		LinkedList<String> unprocessed = new LinkedList<String>();
+		unprocessed.add(suppValue);
+		while(!unprocessed.isEmpty()) {
+			String curr = unprocessed.removeFirst();
+			nodes.add(curr);
+			String[] children = childLookup.get(curr);
+			for(int i = 0; children != null && i < children.length; i++) {
+				unprocessed.add(children[i]);
+			}
+		}
+		nodeValues = nodes.toArray(new String[0]);
+		nodeIDs = new Hashtable<String, Integer>();
+		for(int id = 0; id < nodeValues.length; id++) {
+			nodeIDs.put(nodeValues[id], id);
+		}
+		
+		//parents of nodes (the suppression value is its own parent) and the depth of the VGH
+		int[] parents = new int[nodeValues.length];
+		int[] depths = new int[nodeValues.length];
+		int maxDepth = 0;
+		for(int id = 1; id < nodeValues.length; id++) { //parents precede children
+			parents[id] = nodeIDs.get(parentLookup.get(nodeValues[id]));
+			depths[id] = depths[parents[id]] + 1;
+			maxDepth = Math.max(maxDepth, depths[id]);
+		}
+		ancestors = new int[maxDepth + 1][nodeValues.length];
+		for(int id = 0; id < nodeValues.length; id++) {
+			ancestors[0][id] = id;
+		}
+		for(int h = 1; h <= maxDepth; h++) {
+			for(int id = 0; id < nodeValues.length; id++) {
+				ancestors[h][id] = parents[ancestors[h-1][id]];
+			}
+		}
+		
+		//sort the leaves (nodes without children) on their lower bounds
+		LinkedList<Integer> leafIDs = new LinkedList<Integer>();
+		for(int id = 0; id < nodeValues.length; id++) {
+			if(childLookup.get(nodeValues[id]) == null) {
+				leafIDs.add(id);
+			}
+		}
+		Integer[] sortedIDs = leafIDs.toArray(new Integer[0]);
+		final Interval[] leaves = new Interval[nodeValues.length];
+		for(int i = 0; i < sortedIDs.length; i++) {
+			leaves[sortedIDs[i]] = new Interval(nodeValues[sortedIDs[i]]);
+		}
+		Arrays.sort(sortedIDs, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int cmp = Double.compare(leaves[a].low, leaves[b].low);
+				if(cmp == 0) { //inclusive lower bounds first (e.g., [25] before (25:50])
+					cmp = Boolean.compare(!isIncLow(leaves[a]), !isIncLow(leaves[b]));
+				}
+				return cmp;
+			}
+		});
+		sortedLeaves = new Interval[sortedIDs.length];
+		sortedLeafLows = new double[sortedIDs.length];
+		sortedLeafIDs = new int[sortedIDs.length];
+		for(int i = 0; i < sortedIDs.length; i++) {
+			sortedLeafIDs[i] = sortedIDs[i];
+			sortedLeaves[i] = leaves[sortedIDs[i]];
+			sortedLeafLows[i] = sortedLeaves[i].low;
+		}
+		
+		//leaves should not overlap, otherwise a value could be generalized through either leaf
+		for(int i = 1; i < sortedLeaves.length; i++) {
+			Interval prev = sortedLeaves[i-1];
+			Interval curr = sortedLeaves[i];
+			if(prev.high > curr.low || (prev.high == curr.low && isIncHigh(prev) && isIncLow(curr))) {
+				throw new Exception("Malformed VGH, leaves " + prev + " and " + curr 
+						+ " of attribute " + index + " overlap!!!");
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the lower bound of an interval is inclusive
+	 * @param interval An interval
+	 * @return true if the lower bound is inclusive
+	 */
+	private static boolean isIncLow(Interval interval) {
+		return interval.incType == Interval.TYPE_IncLowIncHigh 
+			|| interval.incType == Interval.TYPE_IncLowExcHigh;
+	}
+	
+	/**
+	 * Checks whether the upper bound of an interval is inclusive
+	 * @param interval An interval
+	 * @return true if the upper bound is inclusive
+	 */
+	private static boolean isIncHigh(Interval interval) {
+		return interval.incType == Interval.TYPE_IncLowIncHigh 
+			|| interval.incType == Interval.TYPE_ExcLowIncHigh;
+	}
+	
+	/**
+	 * Parses a value of the ground domain, either a number or a single-valued interval
+	 * @param value some highest granularity value (not generalized)
+	 * @return The numerical value
+	 * @throws IllegalArgumentException if the value cannot be parsed
+	 */
+	private double parseGroundValue(String value) {
+		double d = Double.NaN;
+		try {
+			d = Double.parseDouble(value);
+		} catch(NumberFormatException e) { //e.g., "[35]"
+			try {
+				d = new Interval(value).low;
+			} catch(Exception e1) {
+				//reported below
+			}
+		}
+		if(Double.isNaN(d)) {
+			throw new IllegalArgumentException("Cannot parse value " + value 
+					+ " of qid-attribute at index " + index + "!!!");
+		}
+		return d;
+	}
+	
+	/**
+	 * Finds the leaf interval that contains a value of the ground domain 
+	 * (leaf intervals do not overlap, see compileVGH)
+	 * @param value some highest granularity value (not generalized)
+	 * @return Index of the leaf within sortedLeaves, -1 if no leaf contains the value
+	 */
+	private int getLeafIndex(double value) {
+		//binary search for the last leaf with a lower bound of at most value
+		int lo = 0;
+		int hi = sortedLeafLows.length;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(sortedLeafLows[mid] <= value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		//the value is either in that leaf, or the previous one (e.g., (0:25] and (25:50])
+		for(int i = lo - 1; i >= 0 && i >= lo - 2; i--) {
+			if(sortedLeaves[i].compareTo(value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
 	/**
 	 * Checks whether the VGH for this qid-attribute corresponds to a domain generalization
 	 * hierarchy. This basically requires that all leave values in the VGH be at the same 
@@ -245,24 +424,87 @@ public class QIDAttribute {
 	 * @return immediate parent of the value (or itself if DGH root is specified)
 	 */
 	public String generalize(String value) {
-		//suppressed values can not be generalized, return itself
-		if(value.compareTo(suppValue) == 0) {
+		return generalize(value, 1);
+	}
+	
+	/**
+	 * Retrieves the generalization of any QID value (leaf or non-leaf) at the specified
+	 * height, through the compiled VGH (see compileVGH())
+	 * @param value some value from the QID's domain
+	 * @param height number of generalizations
+	 * @return value generalized height times (the suppression value is generalized to itself)
+	 * @throws IllegalArgumentException if the value is not a VGH node and cannot be parsed
+	 */
+	public String generalize(String value, int height) {
+		if(height == 0) {
 			return value;
 		}
-		
-		//first try fetching from parentLookup
-		String parent = parentLookup.get(value);
-		if(parent != null) {
-			return parent;
-		}
-		//check containment into leaf intervals
-		for(int i = 0; i < leafIntervals.size(); i++) {
-			Interval curr = leafIntervals.get(i);
-			if(curr.compareTo(value)) {
-				return curr.toString();
-			}
+		//first try fetching the node of the VGH
+		Integer id = nodeIDs.get(value);
+		if(id != null) {
+			return nodeValues[ancestors[Math.min(height, ancestors.length - 1)][id]];
+		}
+		//otherwise, the value is from the ground domain, find the leaf that contains it
+		int leaf = getLeafIndex(parseGroundValue(value));
+		if(leaf < 0) {
+			return null; //should never get here
+		} else if(height == 1) {
+			return sortedLeaves[leaf].toString();
+		}
+		return nodeValues[ancestors[Math.min(height - 1, ancestors.length - 1)][sortedLeafIDs[leaf]]];
+	}
+	
+	/**
+	 * Get the number of VGH nodes (node IDs range from 0 to getNumNodes()-1)
+	 * @return Number of nodes in the VGH
+	 */
+	public int getNumNodes() {
+		return nodeValues.length;
+	}
+	
+	/**
+	 * Get the node ID of a VGH node
+	 * @param value some value from the VGH
+	 * @return Node ID of the value, -1 if the value is not a node of the VGH
+	 */
+	public int getNodeID(String value) {
+		Integer id = nodeIDs.get(value);
+		return (id == null) ? -1 : id;
+	}
+	
+	/**
+	 * Get the node ID of the leaf that contains a value of the ground domain
+	 * @param value some highest granularity value (not generalized)
+	 * @return Node ID of the leaf, -1 if no leaf contains the value
+	 * @throws IllegalArgumentException if the value cannot be parsed
+	 */
+	public int getLeafID(String value) {
+		int leaf = getLeafIndex(parseGroundValue(value));
+		return (leaf < 0) ? -1 : sortedLeafIDs[leaf];
+	}
+	
+	/**
+	 * Get the value of a VGH node
+	 * @param nodeID Node ID
+	 * @return String representation of the node
+	 */
+	public String getNodeValue(int nodeID) {
+		return nodeValues[nodeID];
+	}
+	
+	/**
+	 * Retrieves the generalization of a VGH node at the specified height, without
+	 * any string handling
+	 * @param nodeID Node ID (see getNodeID() and getLeafID())
+	 * @param height number of generalizations
+	 * @return Node ID of the generalization (the suppression value is generalized to itself),
+	 * or nodeID itself if it is negative
+	 */
+	public int generalize(int nodeID, int height) {
+		if(nodeID < 0) {
+			return nodeID;
 		}
-		return null; //should never get here
+		return ancestors[Math.min(height, ancestors.length - 1)][nodeID];
 	}
 	
 	/**
@@ -0,0 +1,182 @@
+package anonymizer;
+
+import java.util.Arrays;
+
+/**
+ * Single-scan evaluator of a privacy requirement on a sensitive attribute. (EID, sensitive
+ * value, count) triples are fed in ascending order of EID (and of the sensitive value within
+ * each equivalence), and each equivalence is checked as soon as its last triple has been fed,
+ * so that a scan can stop at the first violating equivalence. Counts of the current
+ * equivalence are accumulated in primitive arrays that are reused for every equivalence.
+ * <p/>
+ * Shared by AnonRecordTable (over a single GROUP BY EID, ATT query) and MemAnonRecordTable.
+ */
+abstract class SensitiveValueEvaluator {
+	/** EID of the current equivalence*/
+	private long currEID = Long.MIN_VALUE;
+
+	/** Distinct sensitive values of the current equivalence (in ascending order)*/
+	protected double[] values = new double[16];
+
+	/** Count of each sensitive value of the current equivalence*/
+	protected int[] counts = new int[16];
+
+	/** Number of distinct sensitive values of the current equivalence*/
+	protected int length = 0;
+
+	/** Number of records in the current equivalence*/
+	protected int eqSize = 0;
+
+	/**
+	 * Adds the count of a sensitive value of an equivalence
+	 * @param eid Equivalence ID
+	 * @param value Sensitive value
+	 * @param count Number of records of the equivalence with the sensitive value
+	 * @return False if the previous equivalence (complete, since the EID has changed)
+	 * violates the requirement, true otherwise
+	 */
+	public boolean add(long eid, double value, int count) {
+		boolean satisfied = true;
+		if(length > 0 && eid != currEID) {
+			satisfied = evaluate();
+			length = 0;
+			eqSize = 0;
+		}
+		currEID = eid;
+		if(length == values.length) {
+			values = Arrays.copyOf(values, 2 * length);
+			counts = Arrays.copyOf(counts, 2 * length);
+		}
+		values[length] = value;
+		counts[length++] = count;
+		eqSize += count;
+		return satisfied;
+	}
+
+	/**
+	 * Checks the last equivalence (to be called after all triples are fed)
+	 * @return False if the last equivalence violates the requirement, true otherwise
+	 */
+	public boolean finish() {
+		boolean satisfied = (length == 0) || evaluate();
+		length = 0;
+		eqSize = 0;
+		return satisfied;
+	}
+
+	/**
+	 * Checks the requirement on the current equivalence
+	 * @return True if the current equivalence satisfies the requirement
+	 */
+	protected abstract boolean evaluate();
+
+	/**
+	 * Creates an evaluator of entropy l-diversity
+	 * @param l Privacy parameter
+	 * @return A new evaluator
+	 */
+	public static SensitiveValueEvaluator entropyLDiversity(final double l) {
+		return new SensitiveValueEvaluator() {
+			protected boolean evaluate() {
+				double sum = eqSize;
+				double entropy = 0;
+				for(int i = 0; i < length; i++) {
+					double prob = counts[i] / sum;
+					entropy += prob * Math.log(prob);
+				}
+				return !(-1 * entropy < Math.log(l)); //entropy l-div constraint
+			}
+		};
+	}
+
+	/**
+	 * Creates an evaluator of recursive (c,l)-diversity
+	 * @param l Privacy parameter
+	 * @param c Privacy parameter
+	 * @return A new evaluator
+	 */
+	public static SensitiveValueEvaluator recursiveLDiversity(final double l, final double c) {
+		return new SensitiveValueEvaluator() {
+			protected boolean evaluate() {
+				if(length < l) {
+					return false;
+				}
+				int[] countVals = Arrays.copyOf(counts, length);
+				Arrays.sort(countVals); //sort in ascending order
+				int r_1 = countVals[countVals.length-1];
+				int sum = 0;
+				for(int i = (int) Math.round(countVals.length - l); i >= 0; i--) {
+					sum += countVals[i];
+				}
+				return !(r_1 >= c * sum);
+			}
+		};
+	}
+
+	/**
+	 * Creates an evaluator of t-closeness on a categorical sensitive attribute
+	 * @param t Privacy parameter
+	 * @param entireDist Count of each sensitive value over the entire table
+	 * (indexed by the mapped values)
+	 * @param entireSize Number of records in the entire table
+	 * @return A new evaluator
+	 */
+	public static SensitiveValueEvaluator tClosenessCat(final double t, final int[] entireDist,
+			final double entireSize) {
+		return new SensitiveValueEvaluator() {
+			private int[] currDist = new int[entireDist.length];
+
+			protected boolean evaluate() {
+				for(int i = 0; i < length; i++) {
+					currDist[(int) values[i]] = counts[i]; //values are from catDomMapping
+				}
+				double size = eqSize;
+				double sum = 0;
+				for(int i = 0; i < entireDist.length; i++) {
+					sum += Math.abs(entireDist[i]/entireSize - currDist[i]/size);
+				}
+				sum /= 2;
+				for(int i = 0; i < length; i++) { //clear for the next equivalence
+					currDist[(int) values[i]] = 0;
+				}
+				return !(sum > t);
+			}
+		};
+	}
+
+	/**
+	 * Creates an evaluator of t-closeness on a numerical sensitive attribute (ordered distance)
+	 * @param t Privacy parameter
+	 * @param entireValues Distinct sensitive values over the entire table, in ascending order
+	 * @param entireCounts Count of each value in entireValues
+	 * @param entireSize Number of records in the entire table
+	 * @return A new evaluator
+	 */
+	public static SensitiveValueEvaluator tClosenessNum(final double t, final double[] entireValues,
+			final int[] entireCounts, final double entireSize) {
+		return new SensitiveValueEvaluator() {
+			protected boolean evaluate() {
+				double size = eqSize; //necessary to convert counts to probs
+				int m = entireValues.length; //domain size
+				double boundary = t * (m - 1); //maximum distance allowed
+				double sumDist = 0; //total distance so far
+				double sumNoAbsolute = 0; //sum of distances w/o the absolute value
+				//walk over the entire distribution, eq values are a subset of the table values
+				int j = 0;
+				for(int i = 0; i < m; i++) {
+					double r_i = entireCounts[i] / entireSize;
+					if(j < length && values[j] == entireValues[i]) {
+						r_i -= counts[j] / size;
+						j++;
+					}
+					sumNoAbsolute += r_i;
+					if(sumDist > boundary) { //check before adding,
+						return false;		 // so that only m-1 additions are accounted for
+					}
+					sumDist += Math.abs(sumNoAbsolute);
+				}
+				return true;
+			}
+		};
+	}
+}
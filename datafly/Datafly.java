@@ -1,14 +1,18 @@
 package datafly;
 
-import java.sql.ResultSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import sqlwrapper.QueryResult;
 import sqlwrapper.SqLiteSQLWrapper;
 import anonymizer.AnonRecordTable;
 import anonymizer.Anonymizer;
 import anonymizer.Configuration;
 import anonymizer.EquivalenceTable;
+import anonymizer.MemAnonRecordTable;
+import anonymizer.MemEquivalenceTable;
 
 /**
  * Implementation of the Datafly algorithm for satisfying k-anonymity described 
@@ -42,10 +46,6 @@ public class Datafly extends Anonymizer{
 	 * keeping track of table names in the database. */
 	private int eqTableIndex;
 	
-	/**	Current iteration number for the anonRecords table. Starts with 1, used for
-	 * keeping track of table names in the database. */
-	private int anonTableIndex;
-	
 	/**
 	 * Class constructor
 	 * @param conf Configuration instance
@@ -62,14 +62,15 @@ public class Datafly extends Anonymizer{
 			}
 		}
 		suppressionThreshold = conf.k;
-		sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		if(conf.storage == Configuration.STORAGE_SQLITE) {
+			sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		}
 		
-		//set initial indices to 1
+		//set initial index to 1
 		eqTableIndex = 1;
-		anonTableIndex = 1;
-		//create tables
+		//create tables (records are relabeled in place, a single table is needed)
 		eqTable = createEquivalenceTable("eq_" + eqTableIndex); 
-		anonTable = createAnonRecordsTable("an_" + anonTableIndex);
+		anonTable = createAnonRecordsTable("an_1");
 	}
 	
 	/**
@@ -87,6 +88,9 @@ public class Datafly extends Anonymizer{
 	 * @return A new equivalence table
 	 */
 	protected EquivalenceTable createEquivalenceTable(String tableName) {
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemEquivalenceTable(conf.qidAtts, tableName);
+		}
 		return new EquivalenceTable(conf.qidAtts, tableName);
 	}
 	
@@ -102,110 +106,180 @@ public class Datafly extends Anonymizer{
 		for(int i = 0; i < qiAtts.length; i++) {
 			qiAtts[i] = conf.qidAtts[i].index;
 		}
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemAnonRecordTable(qiAtts, new Integer[0], tableName);
+		}
 		return new AnonRecordTable(qiAtts, new Integer[0], tableName);
 	}
 	
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., before any generalization)
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected long insertTupleToEquivalenceTable(String[] vals) throws Exception{
-		return eqTable.insertTuple(vals);
-	}
-	
-	/**
-	 * Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
-	 * @param eid Equivalence id of the equivalence to which the tuple belongs
-	 * @throws Exception
-	 */
-	protected void insertTupleToAnonTable(String[] vals, long eid) throws Exception{
-		//parse qi-attribute values
-		double[] qiVals = new double[conf.qidAtts.length];
-		for(int i = 0; i < conf.qidAtts.length; i++) {
-			String attVal = vals[conf.qidAtts[i].index];
-			if(conf.qidAtts[i].catDomMapping != null) {
-				qiVals[i] = conf.qidAtts[i].catDomMapping.get(attVal);
-			} else {
-				qiVals[i] = Double.parseDouble(attVal);
-			}
-		}
-		anonTable.insert(eid, qiVals, new double[0]);
+	protected long insertTupleToEquivalenceTable(double[] qiVals) throws Exception{
+		return eqTable.insertTuple(qiVals);
 	}
 	
 	/**
 	 * Anonymizes the input. This function can be reused (with new k maybe), as long as 
 	 * eqTable and anonTable objects are fresh and the configuration has 
 	 * not changed.
+	 * <p/>
+	 * Generalization steps are carried out on the equivalences in memory: the number of
+	 * distinct values of each qi-attribute is maintained incrementally as equivalences 
+	 * merge, and each original equivalence keeps track of the equivalence it is currently
+	 * generalized to. The tables are updated only once, after the last step (records are 
+	 * relabeled in place instead of being copied at every step).
 	 * @throws Exception
 	 */
 	public void anonymize() throws Exception{
-		LinkedList<Long> suppressionList;
-		
-		String checkSize_SQL = "SELECT COUNT(*) FROM " + anonTable.getName();
-		int totalSize = ((ResultSet) sqlwrapper.executeQuery(checkSize_SQL).next()).getInt(1);
+		int totalSize = anonTable.size();
 		if(totalSize < conf.k) {
 			throw new Exception("This input cannot be anonymized at k = " + conf.k);
 		}	
 		
-		while((suppressionList = isReadyForSuppression(anonTable.getName())) == null) {
+		//load the equivalences (in the order of the equivalence table) and their sizes
+		LinkedHashMap<Long, String[]> generalizations = eqTable.getGeneralizations();
+		long[] origEIDs = new long[generalizations.size()];
+		Hashtable<Long, Integer> origPositions = new Hashtable<Long, Integer>();
+		ArrayList<String[]> genVals = new ArrayList<String[]>(origEIDs.length);
+		Iterator<Map.Entry<Long, String[]>> iter = generalizations.entrySet().iterator();
+		for(int e = 0; e < origEIDs.length; e++) {
+			Map.Entry<Long, String[]> entry = iter.next();
+			origEIDs[e] = entry.getKey();
+			origPositions.put(entry.getKey(), e);
+			genVals.add(entry.getValue());
+		}
+		int[] sizes = new int[origEIDs.length];
+		long[][] eqSizes = anonTable.getEquivalenceSizes();
+		for(int i = 0; i < eqSizes.length; i++) {
+			sizes[origPositions.get(eqSizes[i][0])] = (int) eqSizes[i][1];
+		}
+		
+		//current equivalence of each original equivalence
+		int[] currPositions = new int[origEIDs.length];
+		for(int e = 0; e < currPositions.length; e++) {
+			currPositions[e] = e;
+		}
+		
+		//number of equivalences that have each generalized value, per qi-attribute
+		ArrayList<Hashtable<String, Integer>> valueCounts = 
+			new ArrayList<Hashtable<String, Integer>>(conf.qidAtts.length);
+		for(int i = 0; i < conf.qidAtts.length; i++) {
+			Hashtable<String, Integer> counts = new Hashtable<String, Integer>();
+			for(int e = 0; e < genVals.size(); e++) {
+				addValueCount(counts, genVals.get(e)[i], 1);
+			}
+			valueCounts.add(counts);
+		}
+		
+		boolean generalized = false;
+		while(!isReadyForSuppression(sizes)) {
 			//select attribute (the QI-attribute with the largest number
 			// of values is to be generalized)
-			int[] genDomainCounts = new int[conf.qidAtts.length];
-			for(int i = 0; i < genDomainCounts.length; i++) {
-				String count_SQL = "SELECT COUNT(*) FROM "
-					+ "(SELECT COUNT(*) FROM " + eqTable.getName() + " GROUP BY"
-					+ " ATT_" + conf.qidAtts[i].index + ") AS T";
-				QueryResult result = sqlwrapper.executeQuery(count_SQL);
-				genDomainCounts[i] = ((ResultSet) result.next()).getInt(1);
-			}
-			//select the generalization attribute based on counts
 			int genAttribute = 0;
-			int maxSize = genDomainCounts[genAttribute];
-			for(int i = 1; i < genDomainCounts.length; i++) {
-				if(genDomainCounts[i] > maxSize) { //update genAttribute
+			int maxSize = valueCounts.get(genAttribute).size();
+			for(int i = 1; i < conf.qidAtts.length; i++) {
+				if(valueCounts.get(i).size() > maxSize) { //update genAttribute
 					genAttribute = i;
-					maxSize = genDomainCounts[i];
+					maxSize = valueCounts.get(i).size();
 				}
 			}
 			
 			//generalize
 			System.out.println("Generalizing attribute " + conf.qidAtts[genAttribute].index);
-			//create new tables for equivalences and anonRecords
-			String newEqvTableName = "eq_" + (++eqTableIndex);
-			EquivalenceTable newEqTable = createEquivalenceTable(newEqvTableName);
-			String newAnonTableName = "an_" + (++anonTableIndex);
-			AnonRecordTable newAnTable = createAnonRecordsTable(newAnonTableName);
-			
-			String iterateEquivalences = "SELECT EID FROM " + eqTable.getName();
-			QueryResult result = sqlwrapper.executeQuery(iterateEquivalences);
-			while(result.hasNext()) {
-				ResultSet rs = (ResultSet) result.next();
-				Long oldEID = rs.getLong(1);
-				double count = anonTable.getEquivalenceSize(oldEID);
-				
-				//build new genVals
-				String[] genVals = eqTable.getGeneralization(oldEID);
-				if(count < conf.k || fullDomainGeneralization) {
-					genVals[genAttribute] = conf.qidAtts[genAttribute].generalize(genVals[genAttribute]);
+			ArrayList<String[]> newGenVals = new ArrayList<String[]>();
+			ArrayList<Integer> newSizes = new ArrayList<Integer>();
+			Hashtable<String, Integer> newPositions = new Hashtable<String, Integer>();
+			int[] positionMapping = new int[genVals.size()]; //old position -> new position
+			for(int e = 0; e < genVals.size(); e++) {
+				String[] vals = genVals.get(e);
+				if(sizes[e] < conf.k || fullDomainGeneralization) {
+					String newVal = conf.qidAtts[genAttribute].generalize(vals[genAttribute]);
+					addValueCount(valueCounts.get(genAttribute), vals[genAttribute], -1);
+					addValueCount(valueCounts.get(genAttribute), newVal, 1);
+					vals[genAttribute] = newVal;
 				}
-				
-				//set new equivalence ID
-				Long newEID = newEqTable.getEID(genVals);
-				if(newEID.compareTo(new Long(-1)) == 0) { //this equivalence does not exist yet, insert to get newEID
-					newEID = newEqTable.insertEquivalence(genVals); //insert into newEqTable
+				String key = EquivalenceTable.getKey(vals);
+				Integer newPosition = newPositions.get(key);
+				if(newPosition == null) { //this equivalence does not exist yet
+					newPosition = newGenVals.size();
+					newPositions.put(key, newPosition);
+					newGenVals.add(vals);
+					newSizes.add(sizes[e]);
+				} else { //merge into the existing equivalence, which has the same values
+					newSizes.set(newPosition, newSizes.get(newPosition) + sizes[e]);
+					for(int i = 0; i < vals.length; i++) {
+						addValueCount(valueCounts.get(i), vals[i], -1);
+					}
 				}
-				newAnTable.copyFrom(anonTable, oldEID, newEID); //copy records from currAnon to newAnon
+				positionMapping[e] = newPosition;
 			}
-			//set new tables as current tables
-			anonTable.drop();
+			for(int e = 0; e < currPositions.length; e++) {
+				currPositions[e] = positionMapping[currPositions[e]];
+			}
+			genVals = newGenVals;
+			sizes = new int[newSizes.size()];
+			for(int e = 0; e < sizes.length; e++) {
+				sizes[e] = newSizes.get(e);
+			}
+			generalized = true;
+		}
+		
+		if(generalized) {
+			//insert the final equivalences into a new table and relabel the records
+			EquivalenceTable newEqTable = createEquivalenceTable("eq_" + (++eqTableIndex));
+			long[] newEIDs = new long[genVals.size()];
+			for(int e = 0; e < newEIDs.length; e++) {
+				newEIDs[e] = newEqTable.insertEquivalence(genVals.get(e));
+			}
+			Hashtable<Long, Long> eidMapping = new Hashtable<Long, Long>();
+			for(int e = 0; e < origEIDs.length; e++) {
+				eidMapping.put(origEIDs[e], newEIDs[currPositions[e]]);
+			}
+			anonTable.remapEIDs(eidMapping);
 			eqTable.drop();
 			eqTable = newEqTable;
-			anonTable = newAnTable;
 		}
+		
 		//apply suppression
-		suppressEquivalences(suppressionList);
+		suppressEquivalences(isReadyForSuppression(anonTable));
+	}
+	
+	/**
+	 * Checks whether the equivalences that are smaller than k can be suppressed
+	 * (see AnonRecordTable.getSuppressionList())
+	 * @param sizes Sizes of the equivalences
+	 * @return True if the total size of such equivalences is within the suppression threshold
+	 */
+	private boolean isReadyForSuppression(int[] sizes) {
+		if(suppressionThreshold <= 0) {
+			return true;
+		}
+		int sumEquivalenceSizes = 0;
+		for(int e = 0; e < sizes.length; e++) {
+			if(sizes[e] < conf.k) {
+				sumEquivalenceSizes += sizes[e];
+			}
+		}
+		return sumEquivalenceSizes <= suppressionThreshold;
+	}
+	
+	/**
+	 * Updates the number of equivalences that have a generalized value
+	 * @param counts Number of equivalences of each generalized value
+	 * @param genVal A generalized value
+	 * @param delta Change in the number of equivalences
+	 */
+	private static void addValueCount(Hashtable<String, Integer> counts, String genVal, int delta) {
+		Integer count = counts.get(genVal);
+		int newCount = (count == null) ? delta : count + delta;
+		if(newCount <= 0) {
+			counts.remove(genVal);
+		} else {
+			counts.put(genVal, newCount);
+		}
 	}
 }
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.LinkedList;
 
 import libsvm.svm_node;
+import anonymizer.CSVReader;
 import anonymizer.QIDAttribute;
 
 /**
@@ -222,26 +223,22 @@ public class FeatureRepresentation {
 	public void initialScan(String inputFile) {
 		try {
 			//open file
-			FileReader myInputFile = new FileReader(inputFile);
-			BufferedReader input = new BufferedReader(myInputFile);
+			CSVReader input = new CSVReader(inputFile, ",");
 			//go through the lines
-			String line = null;
-			while((line = input.readLine())!=null && line.compareTo("")!=0) {
-				String[] temp = line.split(",");
+			while(input.next() && !input.isEmpty()) {
 				for(int i = 0; i < attributes.length; i++) {
 					if(isCont[i]) {
 						NumericAtt att = (NumericAtt) attributes[i]; 
-						att.addValue(temp[att.getIndex()]); //use index to skip id attributes
+						att.addValue(input.get(att.getIndex())); //use index to skip id attributes
 					}
 					else {
 						CategoricalAtt att = (CategoricalAtt) attributes[i];
-						att.addCategory(temp[att.getIndex()]); //use index to skip id attributes
+						att.addCategory(input.get(att.getIndex())); //use index to skip id attributes
 					}
 				}
 			}
 			//close the file
 			input.close();
-			myInputFile.close();
 		} catch(Exception e) {e.printStackTrace();}
 	}
 	
@@ -264,22 +261,100 @@ public class FeatureRepresentation {
 		}
 		featAttMapping = new int[maxFIndex];
 		featAttMapping[0] = -1; //class attribute
+		ArrayList<int[]> blocks = new ArrayList<int[]>(); //(type, start, end) triples
 		for(int i = 0; i < attributes.length; i++) {
+			int attFeatIndex, numFeats;
 			if(isCont[i]) { //attribute is continuous
-				int attFeatIndex = ((NumericAtt) attributes[i]).featureIndex;
-				int numFeats = ((NumericAtt) attributes[i]).numFeatures;
-				for(int j = 0; j < numFeats; j++) {
-					featAttMapping[attFeatIndex+j] = i;
-				}
+				attFeatIndex = ((NumericAtt) attributes[i]).featureIndex;
+				numFeats = ((NumericAtt) attributes[i]).numFeatures;
 			}
 			else {
-				int attFeatIndex = ((CategoricalAtt) attributes[i]).featureIndex;
-				int numFeats = ((CategoricalAtt) attributes[i]).numFeatures;
-				for(int j = 0; j < numFeats; j++) {
-					featAttMapping[attFeatIndex+j] = i;
+				attFeatIndex = ((CategoricalAtt) attributes[i]).featureIndex;
+				numFeats = ((CategoricalAtt) attributes[i]).numFeatures;
+			}
+			for(int j = 0; j < numFeats; j++) {
+				featAttMapping[attFeatIndex+j] = i;
+			}
+			
+			//describe the block of the attribute in the dense layout
+			int type = BLOCK_PLAIN;
+			if(isGeneralized[i] && isCont[i] && numRep == 4) {
+				type = BLOCK_EXPECTED_NUM;
+			} else if(isGeneralized[i] && !isCont[i] && catRep == 4) {
+				type = BLOCK_EXPECTED_CAT;
+			}
+			int[] last = blocks.isEmpty() ? null : blocks.get(blocks.size()-1);
+			if(type == BLOCK_PLAIN && last != null && last[0] == BLOCK_PLAIN 
+					&& last[2] == attFeatIndex) {
+				last[2] += numFeats; //merge with the previous plain block
+			} else {
+				blocks.add(new int[] {type, attFeatIndex, attFeatIndex + numFeats});
+			}
+		}
+		blockTypes = new int[blocks.size()];
+		blockStarts = new int[blocks.size()];
+		blockEnds = new int[blocks.size()];
+		for(int b = 0; b < blockTypes.length; b++) {
+			blockTypes[b] = blocks.get(b)[0];
+			blockStarts[b] = blocks.get(b)[1];
+			blockEnds[b] = blocks.get(b)[2];
+		}
+	}
+	
+	/** Block of features compared one by one (i.e., not generalized or represented by a 
+	 * baseline heuristic)*/
+	private static final int BLOCK_PLAIN = 0;
+	
+	/** Block of the two features of a generalized numeric attribute (numRep = 4)*/
+	private static final int BLOCK_EXPECTED_NUM = 1;
+	
+	/** Block of the leaf features of a generalized categorical attribute (catRep = 4)*/
+	private static final int BLOCK_EXPECTED_CAT = 2;
+	
+	/** Type of each block of the dense layout (blocks are in ascending order of features)*/
+	private int[] blockTypes;
+	
+	/** First feature index of each block*/
+	private int[] blockStarts;
+	
+	/** Feature index following the last feature of each block*/
+	private int[] blockEnds;
+	
+	/**
+	 * Compiles a feature vector into the dense layout (entry i is the value of feature i), so 
+	 * that expected dot products and distances of compiled vectors are computed block by block 
+	 * without merging sparse vectors. Vectors that do not fit the layout (e.g., a generalized 
+	 * attribute with missing features, or non-finite values that would turn the implicit 
+	 * zeros of the dense layout into NaNs) are not compiled; use the sparse methods instead.
+	 * @param x vector of features
+	 * @return Dense vector, null if x does not fit the layout
+	 */
+	public double[] compile(svm_node[] x) {
+		double[] dense = new double[featAttMapping.length];
+		boolean[] isSet = new boolean[dense.length];
+		int prevIndex = 0;
+		for(int i = 0; i < x.length; i++) {
+			int index = x[i].index;
+			double value = x[i].value;
+			if(index <= prevIndex || index >= dense.length 
+					|| Double.isNaN(value) || Double.isInfinite(value)) {
+				return null;
+			}
+			dense[index] = value;
+			isSet[index] = true;
+			prevIndex = index;
+		}
+		//features of a generalized attribute are consumed together, all should be present
+		for(int b = 0; b < blockTypes.length; b++) {
+			if(blockTypes[b] != BLOCK_PLAIN) {
+				for(int f = blockStarts[b]; f < blockEnds[b]; f++) {
+					if(!isSet[f]) {
+						return null;
+					}
 				}
 			}
 		}
+		return dense;
 	}
 	
 	/**
@@ -290,19 +365,16 @@ public class FeatureRepresentation {
 	 */
 	public void featurize(String inputFile, String outputFile) {
 		try {
-			FileReader myInputFile = new FileReader(inputFile);
-			BufferedReader input = new BufferedReader(myInputFile);
+			CSVReader input = new CSVReader(inputFile, ",");
 			
 			FileWriter myOutputFile = new FileWriter(outputFile);
 			BufferedWriter output = new BufferedWriter(myOutputFile);
 			
-			String line = null;
 			String newline = System.getProperty("line.separator");
 			String outputLine = null;
-			while((line = input.readLine())!=null && line.trim().compareTo("") != 0) {
-				String[] temp = line.split(",");
+			while(input.next() && !input.isBlank()) {
 				//grab the class value from the last entry
-				if(temp[temp.length-1].compareTo(classValues[0]) == 0) {
+				if(input.get(input.size()-1).compareTo(classValues[0]) == 0) {
 					outputLine = "-1 ";
 				}
 				else {
@@ -311,18 +383,17 @@ public class FeatureRepresentation {
 				for(int i=0; i < attributes.length; i++) {
 					if(isCont[i]) { //attribute is continuous
 						NumericAtt num = (NumericAtt) attributes[i]; //use index to skip identifiers
-						outputLine += num.getFeaturizedValue(temp[num.getIndex()]); 
+						outputLine += num.getFeaturizedValue(input.get(num.getIndex())); 
 					}
 					else {
 						CategoricalAtt cat = (CategoricalAtt) attributes[i]; //use index to skip identifiers
-						outputLine += cat.getFeaturizedValue(temp[cat.getIndex()]);
+						outputLine += cat.getFeaturizedValue(input.get(cat.getIndex()));
 					}
 				}
 				output.write(outputLine+newline);
 			}
 			//close the files
 			input.close();
-			myInputFile.close();
 			output.close();
 			myOutputFile.close();
 		} catch(Exception e) {e.printStackTrace();}
@@ -372,6 +443,50 @@ public class FeatureRepresentation {
 		return -1;
 	}
 	
+	/**
+	 * Computes the expected square distance of compiled vectors (see compile())
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected square distance between x and y
+	 */
+	public double squareDistance(double[] x, double[] y) {
+		if(usePDFExp) {
+			return squareDistancePDF(x, y);
+		} else if(useUniExp){
+			return squareDistanceUni(x, y);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Computes the expected dot product of compiled vectors (see compile())
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected dot product of x and y
+	 */
+	public double dotProduct(double[] x, double[] y) {
+		if(usePDFExp) {
+			return dotProductPDF(x, y);
+		} else if(useUniExp){
+			return dotProductUni(x, y);
+		}
+		return -1;
+	}
+	
+	/**
+	 * Computes the expected dot product of a compiled vector (see compile())
+	 * @param x dense vector of features
+	 * @return Expected dot product of x and x
+	 */
+	public double dotProduct(double[] x) {
+		if(usePDFExp) {
+			return dotProductPDF(x);
+		} else if(useUniExp){
+			return dotProductUni(x);
+		}
+		return -1;
+	}
+	
 	/**
 	 * Computes the expected square distance based on QI-statistics
 	 * @param x vector of features
@@ -707,4 +822,194 @@ public class FeatureRepresentation {
 		
 		return sum;
 	}
+	
+	/**
+	 * Computes the expected square distance based on QI-statistics
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected square distance between x and y
+	 */
+	private double squareDistancePDF(double[] x, double[] y) {
+		double dist = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_PLAIN) {
+				for(int f = start; f < end; f++) {
+					double diff = x[f] - y[f];
+					dist += diff * diff;
+				}
+			} else if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				double mean1 = x[start];
+				double var1 = x[start+1];
+				double mean2 = y[start];
+				double var2 = y[start+1];
+				dist += var1 + var2 + mean1 * mean1 + mean2 * mean2
+					- 2 * mean1 * mean2;
+			} else {
+				double sum = 0;
+				for(int f = start; f < end; f++) {
+					sum += x[f] * y[f];
+				}
+				dist+= 1 - sum;
+			}
+		}
+		return dist;
+	}
+	
+	/**
+	 * Computes the expected dot product based on QI-statistics
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected dot product between x and y
+	 */
+	private double dotProductPDF(double[] x, double[] y) {
+		double sum = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				sum += x[start] * y[start]; //by-pass variances
+			} else { //plain features and leaf probabilities are multiplied alike
+				for(int f = start; f < end; f++) {
+					sum += x[f] * y[f];
+				}
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Computes the expected dot product based on QI-statistics
+	 * @param x dense vector of features
+	 * @return Expected dot product between x and x
+	 */
+	private double dotProductPDF(double[] x) {
+		double sum = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_PLAIN) {
+				for(int f = start; f < end; f++) {
+					sum += x[f] * x[f];
+				}
+			} else if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				double mean = x[start];
+				double var = x[start+1];
+				sum += var + mean * mean;
+			} else {
+				sum += 1;
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Computes the expected square distance based on the assumption
+	 * that values of a generalization are distributed uniformly
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected square distance between x and y
+	 */
+	private double squareDistanceUni(double[] x, double[] y) {
+		double dist = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_PLAIN) {
+				for(int f = start; f < end; f++) {
+					double diff = x[f] - y[f];
+					dist += diff * diff;
+				}
+			} else if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				double xLow = x[start];
+				double xHigh = x[start+1];
+				double yLow = y[start];
+				double yHigh = y[start+1];
+				dist += (1.0/3)*(xLow*xLow + xHigh*xHigh + yLow*yLow + yHigh*yHigh)
+					+ (1.0/3)*(xLow*xHigh + yLow*yHigh)
+					- (1.0/2)*(xLow*yLow + xLow*yHigh + yLow*xHigh + xHigh*yHigh);
+			} else {
+				double intersection = 0; //intersection on leaves
+				int xCount = 0, yCount = 0;
+				for(int f = start; f < end; f++) {
+					if(x[f] == 1) {
+						xCount++;
+					}
+					if(y[f] == 1) {
+						yCount++;
+					}
+					intersection += x[f] * y[f];
+				}
+				dist += 1 - intersection / (xCount*yCount);
+			}
+		}
+		return dist;
+	}
+	
+	/**
+	 * Computes the expected dot product based on the assumption
+	 * that values of a generalization are distributed uniformly
+	 * @param x dense vector of features
+	 * @param y dense vector of features
+	 * @return Expected dot product of x and y
+	 */
+	private double dotProductUni(double[] x, double[] y) {
+		double sum = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_PLAIN) {
+				for(int f = start; f < end; f++) {
+					sum += x[f] * y[f];
+				}
+			} else if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				double xLow = x[start];
+				double xHigh = x[start+1];
+				double yLow = y[start];
+				double yHigh = y[start+1];
+				sum += ((xLow+xHigh)/2) * ((yLow+yHigh)/2); //use midpoint
+			} else {
+				double intersection = 0;
+				int xCount = 0, yCount = 0;
+				for(int f = start; f < end; f++) {
+					if(x[f] == 1) {
+						xCount++;
+					}
+					if(y[f] == 1) {
+						yCount++;
+					} //intersection is incremented only if both values are 1
+					intersection += x[f] * y[f];
+				}
+				sum += intersection / (xCount * yCount);
+			}
+		}
+		return sum;
+	}
+	
+	/**
+	 * Computes the expected dot product based on the assumption
+	 * that values of a generalization are distributed uniformly
+	 * @param x dense vector of features
+	 * @return Expected dot product of x and x
+	 */
+	private double dotProductUni(double[] x) {
+		double sum = 0;
+		for(int b = 0; b < blockTypes.length; b++) {
+			int start = blockStarts[b];
+			int end = blockEnds[b];
+			if(blockTypes[b] == BLOCK_PLAIN) {
+				for(int f = start; f < end; f++) {
+					sum += x[f] * x[f];
+				}
+			} else if(blockTypes[b] == BLOCK_EXPECTED_NUM) {
+				double low = x[start];
+				double high = x[start+1];
+				sum += ((high-low)*(high-low))/12 + ((high+low)*(high+low))/4;
+			} else {
+				sum += 1;
+			}
+		}
+		return sum;
+	}
 }
@@ -0,0 +1,556 @@
+package incognito;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import anonymizer.AnonRecordTable;
+import anonymizer.EquivalenceTable;
+import anonymizer.QIDAttribute;
+
+/**
+ * Frequency set of a generalization lattice entry, i.e., the size (and, if required, the
+ * sensitive value distribution) of each equivalence that the generalization yields.
+ * <p/>
+ * As described in Section 3.3.2 of the Incognito paper, the frequency set of a generalization
+ * can be computed by rolling up the frequency set of any of its parents, without visiting the
+ * records again. Only the frequency set of the original table is built from the tables, with
+ * a single scan of the anonRecords table.
+ * <p/>
+ * Privacy checks below mirror those of AnonRecordTable, so that a lattice entry can be
+ * evaluated without materializing its tables.
+ * <p/>
+ * Generalized values are encoded as integers: a code smaller than the number of VGH nodes
+ * is a node ID (see QIDAttribute.getNodeID()), larger codes index the values of the ground
+ * domain that appear in the original table. Rollups therefore never parse or hash strings.
+ */
+public class FrequencySet {
+	/**
+	 * A single equivalence of the frequency set
+	 */
+	private static class Group {
+		/** Encoded generalized qi-attribute values of the equivalence*/
+		int[] codes;
+		/** Number of records within the equivalence*/
+		int size = 0;
+		/** Counts of each sensitive value (null if no sensitive attribute is tracked)*/
+		TreeMap<Double, Integer> sensCounts;
+
+		Group(int[] codes, boolean trackSensitive) {
+			this.codes = codes;
+			if(trackSensitive) {
+				sensCounts = new TreeMap<Double, Integer>();
+			}
+		}
+
+		void addCount(double value, int count) {
+			Integer currCount = sensCounts.get(value);
+			sensCounts.put(value, (currCount == null) ? count : currCount + count);
+		}
+
+		void merge(Group that) {
+			size += that.size;
+			if(sensCounts != null) {
+				Iterator<Map.Entry<Double, Integer>> iter = that.sensCounts.entrySet().iterator();
+				while(iter.hasNext()) {
+					Map.Entry<Double, Integer> entry = iter.next();
+					addCount(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hash key of an encoded generalization
+	 */
+	private static class Key {
+		/** Encoded generalized qi-attribute values*/
+		int[] codes;
+		/** Cached hash code*/
+		int hash;
+
+		Key(int[] codes) {
+			this.codes = codes;
+			this.hash = Arrays.hashCode(codes);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return (o instanceof Key) && Arrays.equals(codes, ((Key) o).codes);
+		}
+	}
+
+	/** Equivalences keyed by their encoded generalized values*/
+	private LinkedHashMap<Key, Group> groups;
+
+	/** true if sensitive value distributions are tracked*/
+	private boolean trackSensitive;
+
+	/** Number of VGH nodes of each qi-attribute (i.e., the first code of the ground values)*/
+	private int[] numNodes;
+
+	/** groundLeaves[i][c] is the node ID of the leaf that contains the ground value 
+	 * encoded with numNodes[i] + c (shared among rolled up frequency sets)*/
+	private int[][] groundLeaves;
+
+	/**
+	 * Class constructor, builds the frequency set of existing tables
+	 * @param qidAtts Quasi-identifier attributes
+	 * @param eqTable Equivalence table
+	 * @param anonTable AnonRecords table
+	 * @param sensIndex Index of the sensitive attribute (negative if not needed)
+	 */
+	public FrequencySet(QIDAttribute[] qidAtts, EquivalenceTable eqTable, AnonRecordTable anonTable, 
+			int sensIndex) throws Exception {
+		this.trackSensitive = (sensIndex >= 0);
+		this.groups = new LinkedHashMap<Key, Group>();
+		this.numNodes = new int[qidAtts.length];
+		for(int i = 0; i < qidAtts.length; i++) {
+			numNodes[i] = qidAtts[i].getNumNodes();
+		}
+
+		//encode values of the ground domain as they are encountered
+		ArrayList<HashMap<String, Integer>> groundCodes = new ArrayList<HashMap<String, Integer>>();
+		ArrayList<ArrayList<Integer>> leaves = new ArrayList<ArrayList<Integer>>();
+		for(int i = 0; i < qidAtts.length; i++) {
+			groundCodes.add(new HashMap<String, Integer>());
+			leaves.add(new ArrayList<Integer>());
+		}
+
+		//one group per non-empty equivalence
+		LinkedHashMap<Long, String[]> generalizations = eqTable.getGeneralizations();
+		Hashtable<Long, Group> eidGroups = new Hashtable<Long, Group>();
+		long[][] sizes = anonTable.getEquivalenceSizes();
+		for(int i = 0; i < sizes.length; i++) {
+			String[] genVals = generalizations.get(sizes[i][0]);
+			int[] codes = new int[genVals.length];
+			for(int j = 0; j < codes.length; j++) {
+				codes[j] = qidAtts[j].getNodeID(genVals[j]);
+				if(codes[j] < 0) { //not a VGH node, i.e., a value of the ground domain
+					Integer code = groundCodes.get(j).get(genVals[j]);
+					if(code == null) {
+						code = numNodes[j] + leaves.get(j).size();
+						groundCodes.get(j).put(genVals[j], code);
+						int leaf = qidAtts[j].getLeafID(genVals[j]);
+						if(leaf < 0) {
+							throw new Exception("Value " + genVals[j] + " of qid-attribute at index " 
+									+ qidAtts[j].index + " is not contained in any leaf of the VGH!!!");
+						}
+						leaves.get(j).add(leaf);
+					}
+					codes[j] = code;
+				}
+			}
+			Key key = new Key(codes);
+			Group group = groups.get(key);
+			if(group == null) { //first equivalence with these values
+				group = new Group(codes, trackSensitive);
+				groups.put(key, group);
+			}
+			group.size += (int) sizes[i][1];
+			eidGroups.put(sizes[i][0], group);
+		}
+
+		//sensitive value counts
+		if(trackSensitive) {
+			double[][] counts = anonTable.getEquivalenceValueCounts(sensIndex);
+			for(int i = 0; i < counts.length; i++) {
+				eidGroups.get((long) counts[i][0]).addCount(counts[i][1], (int) counts[i][2]);
+			}
+		}
+
+		this.groundLeaves = new int[qidAtts.length][];
+		for(int i = 0; i < qidAtts.length; i++) {
+			groundLeaves[i] = new int[leaves.get(i).size()];
+			for(int c = 0; c < groundLeaves[i].length; c++) {
+				groundLeaves[i][c] = leaves.get(i).get(c);
+			}
+		}
+	}
+
+	/**
+	 * Class constructor for an empty frequency set
+	 * @param that Frequency set that provides the encoding of the ground values
+	 */
+	private FrequencySet(FrequencySet that) {
+		this.trackSensitive = that.trackSensitive;
+		this.groups = new LinkedHashMap<Key, Group>();
+		this.numNodes = that.numNodes;
+		this.groundLeaves = that.groundLeaves;
+	}
+
+	/**
+	 * Computes the frequency set of a further generalization by merging equivalences
+	 * @param qidAtts Quasi-identifier attributes
+	 * @param generalizations Number of further generalizations for each qi-attribute
+	 * @return Frequency set of the generalization
+	 */
+	public FrequencySet rollup(QIDAttribute[] qidAtts, int[] generalizations) throws Exception {
+		FrequencySet retVal = new FrequencySet(this);
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			Group group = iter.next();
+			int[] codes = group.codes.clone();
+			for(int i = 0; i < codes.length; i++) {
+				if(generalizations[i] == 0) {
+					continue;
+				}
+				if(codes[i] >= numNodes[i]) { //ground value, first generalization yields the leaf
+					codes[i] = qidAtts[i].generalize(groundLeaves[i][codes[i] - numNodes[i]], 
+							generalizations[i] - 1);
+				} else {
+					codes[i] = qidAtts[i].generalize(codes[i], generalizations[i]);
+				}
+			}
+
+			Key key = new Key(codes);
+			Group newGroup = retVal.groups.get(key);
+			if(newGroup == null) {
+				newGroup = new Group(codes, trackSensitive);
+				retVal.groups.put(key, newGroup);
+			}
+			newGroup.merge(group);
+		}
+		return retVal;
+	}
+
+	/**
+	 * Get the number of equivalences
+	 * @return Number of equivalences
+	 */
+	public int size() {
+		return groups.size();
+	}
+
+	/**
+	 * Sizes of the equivalences of a frequency set, in ascending order. Sufficient to check 
+	 * k-anonymity for any k (and suppression threshold) after the frequency set is released.
+	 */
+	public static class SizeProfile {
+		/** Equivalence sizes in ascending order*/
+		private int[] sizes;
+		/** prefixSums[i] is the total size of the i smallest equivalences*/
+		private long[] prefixSums;
+
+		/**
+		 * Class constructor
+		 * @param sizes Equivalence sizes (sorted in place)
+		 */
+		SizeProfile(int[] sizes) {
+			Arrays.sort(sizes);
+			this.sizes = sizes;
+			this.prefixSums = new long[sizes.length + 1];
+			for(int i = 0; i < sizes.length; i++) {
+				prefixSums[i+1] = prefixSums[i] + sizes[i];
+			}
+		}
+
+		/**
+		 * Get the number of equivalences
+		 * @return Number of equivalences
+		 */
+		public int size() {
+			return sizes.length;
+		}
+
+		/**
+		 * Get the number of equivalences that contain less than k records
+		 * @param k Privacy parameter
+		 * @return Number of equivalences
+		 */
+		public int countEquivalencesSmallerThan(int k) {
+			int lo = 0;
+			int hi = sizes.length;
+			while(lo < hi) { //first equivalence with at least k records
+				int mid = (lo + hi) >>> 1;
+				if(sizes[mid] < k) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		/**
+		 * Checks the k-anonymity privacy definition with suppression
+		 * @param k Privacy parameter
+		 * @param suppThreshold Maximum number of records that can be suppressed
+		 * @return True if k-anonymous after suppression, False otherwise
+		 */
+		public boolean checkKAnonymityRequirement(int k, int suppThreshold) {
+			return prefixSums[countEquivalencesSmallerThan(k)] <= suppThreshold;
+		}
+	}
+
+	/**
+	 * Get the sizes of the equivalences
+	 * @return Size profile of this frequency set
+	 */
+	public SizeProfile getSizeProfile() {
+		int[] sizes = new int[groups.size()];
+		Iterator<Group> iter = groups.values().iterator();
+		for(int i = 0; i < sizes.length; i++) {
+			sizes[i] = iter.next().size;
+		}
+		return new SizeProfile(sizes);
+	}
+
+	/**
+	 * Checks the entropy l-diversity privacy definition
+	 * @param l Privacy parameter
+	 * @return True if entropy l-diverse, False otherwise
+	 */
+	public boolean checkLDiversityRequirement(double l) {
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			if(getEntropy(iter.next()) < Math.log(l)) { //entropy l-div constraint
+				return false;
+			}
+		}
+		//no violation, return true
+		return true;
+	}
+
+	/**
+	 * Get the smallest entropy of the sensitive values over all equivalences, i.e., the 
+	 * frequency set is entropy l-diverse iff the result is not less than log(l)
+	 * @return Smallest entropy (infinity if there are no equivalences)
+	 */
+	public double getMinEntropy() {
+		double minEntropy = Double.POSITIVE_INFINITY;
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			minEntropy = Math.min(minEntropy, getEntropy(iter.next()));
+		}
+		return minEntropy;
+	}
+
+	/**
+	 * Computes the entropy of the sensitive values of an equivalence
+	 * @param group An equivalence
+	 * @return Entropy
+	 */
+	private static double getEntropy(Group group) {
+		double sum = group.size;
+		double entropy = 0;
+		Iterator<Integer> counts = group.sensCounts.values().iterator();
+		while(counts.hasNext()) {
+			double prob = counts.next() / sum;
+			entropy += prob * Math.log(prob);
+		}
+		return -1 * entropy;
+	}
+
+	/**
+	 * Checks the recursive (c,l)-diversity privacy definition
+	 * @param l Privacy parameter
+	 * @param c Privacy parameter
+	 * @return True if recursive (c,l)-diverse, False otherwise
+	 */
+	public boolean checkLDiversityRequirement(double l, double c) {
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			Group group = iter.next();
+			if(group.sensCounts.size() < l) {
+				return false;
+			}
+			int[] countVals = new int[group.sensCounts.size()];
+			Iterator<Integer> counts = group.sensCounts.values().iterator();
+			for(int i = 0; i < countVals.length; i++) {
+				countVals[i] = counts.next();
+			}
+			Arrays.sort(countVals); //sort in ascending order
+			int r_1 = countVals[countVals.length-1];
+			int sum = 0;
+			for(int i = (int) Math.round(countVals.length - l); i >= 0; i--) {
+				sum += countVals[i];
+			}
+			if(r_1 >= c * sum) {
+				return false;
+			}
+		}
+		//no violation, return true
+		return true;
+	}
+
+	/**
+	 * Checks the t-closeness privacy definition for a categorical sensitive attribute
+	 * @param t Privacy parameter
+	 * @param sensDomSize Domain size of the sensitive attribute
+	 * @return True if t-close, False otherwise
+	 */
+	public boolean checkTClosenessRequirement_Cat(double t, int sensDomSize) {
+		if(sensDomSize == 1) { //quick and dirty check for the special case
+			return true;
+		}
+		return getMaxDistance_Cat(sensDomSize, t) <= t;
+	}
+
+	/**
+	 * Get the largest distance between the sensitive value distribution of an equivalence
+	 * and that of the entire table (categorical sensitive attribute), i.e., the frequency 
+	 * set is t-close iff the result is not greater than t
+	 * @param sensDomSize Domain size of the sensitive attribute
+	 * @return Largest distance (0 if the domain has a single value)
+	 */
+	public double getMaxDistance_Cat(int sensDomSize) {
+		if(sensDomSize == 1) {
+			return 0;
+		}
+		return getMaxDistance_Cat(sensDomSize, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Computes the largest distance between the sensitive value distribution of an 
+	 * equivalence and that of the entire table (categorical sensitive attribute)
+	 * @param sensDomSize Domain size of the sensitive attribute
+	 * @param t Distances are not computed further once one of them is greater than t
+	 * @return Largest distance
+	 */
+	private double getMaxDistance_Cat(int sensDomSize, double t) {
+		//compute the distribution over the entire table
+		int[] entireDist = new int[sensDomSize];
+		double entireSize = 0;
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			Group group = iter.next();
+			Iterator<Map.Entry<Double, Integer>> counts = group.sensCounts.entrySet().iterator();
+			while(counts.hasNext()) {
+				Map.Entry<Double, Integer> entry = counts.next();
+				entireDist[entry.getKey().intValue()] += entry.getValue();
+			}
+			entireSize += group.size;
+		}
+
+		//now compute the distribution over each equivalence
+		double maxDist = 0;
+		iter = groups.values().iterator();
+		while(iter.hasNext() && maxDist <= t) {
+			Group group = iter.next();
+			int[] currDist = new int[sensDomSize];
+			Iterator<Map.Entry<Double, Integer>> counts = group.sensCounts.entrySet().iterator();
+			while(counts.hasNext()) {
+				Map.Entry<Double, Integer> entry = counts.next();
+				currDist[entry.getKey().intValue()] = entry.getValue();
+			}
+			double eqSize = group.size;
+			double sum = 0;
+			for(int i = 0; i < entireDist.length; i++) {
+				sum += Math.abs(entireDist[i]/entireSize - currDist[i]/eqSize);
+			}
+			sum /= 2;
+			maxDist = Math.max(maxDist, sum);
+		}
+		return maxDist;
+	}
+
+	/**
+	 * Checks the t-closeness privacy definition for a numerical sensitive attribute
+	 * @param t Privacy parameter
+	 * @return True if t-close, False otherwise
+	 */
+	public boolean checkTClosenessRequirement_Num(double t) {
+		int m = getEntireDistribution().size(); //domain size
+		double boundary = t * (m - 1); //maximum distance allowed
+		return !(getMaxDistance_Num(boundary) > boundary);
+	}
+
+	/**
+	 * Get the number of distinct sensitive values over the entire table
+	 * @return Number of sensitive values
+	 */
+	public int countSensitiveValues() {
+		return getEntireDistribution().size();
+	}
+
+	/**
+	 * Get the largest (unnormalized) distance between the sensitive value distribution of 
+	 * an equivalence and that of the entire table (numerical sensitive attribute), i.e., the
+	 * frequency set is t-close iff the result is not greater than t * (m - 1), where m is the
+	 * number of sensitive values (see countSensitiveValues())
+	 * @return Largest distance
+	 */
+	public double getMaxDistance_Num() {
+		return getMaxDistance_Num(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Computes the counts of each sensitive value over the entire table
+	 * @return Counts, in ascending order of sensitive values
+	 */
+	private TreeMap<Double, Integer> getEntireDistribution() {
+		TreeMap<Double, Integer> entireDist = new TreeMap<Double, Integer>();
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			Group group = iter.next();
+			Iterator<Map.Entry<Double, Integer>> counts = group.sensCounts.entrySet().iterator();
+			while(counts.hasNext()) {
+				Map.Entry<Double, Integer> entry = counts.next();
+				Integer currCount = entireDist.get(entry.getKey());
+				entireDist.put(entry.getKey(),
+						(currCount == null) ? entry.getValue() : currCount + entry.getValue());
+			}
+		}
+		return entireDist;
+	}
+
+	/**
+	 * Computes the largest (unnormalized) distance between the sensitive value distribution
+	 * of an equivalence and that of the entire table (numerical sensitive attribute)
+	 * @param boundary Distances are not computed further once one of them is greater than boundary
+	 * @return Largest distance
+	 */
+	private double getMaxDistance_Num(double boundary) {
+		//compute the distribution over the entire table
+		TreeMap<Double, Integer> entireDist = getEntireDistribution();
+		double entireSize = 0; //necessary to convert counts to probabilities
+		Iterator<Group> iter = groups.values().iterator();
+		while(iter.hasNext()) {
+			entireSize += iter.next().size;
+		}
+		double[] entireVals = new double[entireDist.size()];
+		int[] entireCounts = new int[entireDist.size()];
+		Iterator<Map.Entry<Double, Integer>> entireIter = entireDist.entrySet().iterator();
+		for(int i = 0; i < entireVals.length; i++) {
+			Map.Entry<Double, Integer> entry = entireIter.next();
+			entireVals[i] = entry.getKey();
+			entireCounts[i] = entry.getValue();
+		}
+		int m = entireVals.length; //domain size
+
+		//now compute the distance of each equivalence
+		double maxDist = 0;
+		iter = groups.values().iterator();
+		while(iter.hasNext() && !(maxDist > boundary)) {
+			Group group = iter.next();
+			double eqSize = group.size; //necessary to convert counts to probs
+
+			double sumDist = 0; //total distance so far
+			double sumNoAbsolute = 0; //sum of distances w/o the absolute value
+			//walk over the entire distribution, eq values are a subset of the table values
+			for(int i = 0; i < m; i++) {
+				double r_i = entireCounts[i] / entireSize;
+				Integer eqCount = group.sensCounts.get(entireVals[i]);
+				if(eqCount != null) {
+					r_i -= eqCount / eqSize;
+				}
+				sumNoAbsolute += r_i;
+				if(i == m - 1 || sumDist > boundary) { //stop before adding, 
+					break;		 // so that only m-1 additions are accounted for
+				}
+				sumDist += Math.abs(sumNoAbsolute);
+			}
+			maxDist = Math.max(maxDist, sumDist);
+		}
+		return maxDist;
+	}
+}
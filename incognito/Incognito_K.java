@@ -1,15 +1,18 @@
 package incognito;
 
-import java.sql.ResultSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
 
-import sqlwrapper.QueryResult;
 import sqlwrapper.SqLiteSQLWrapper;
 import anonymizer.AnonRecordTable;
 import anonymizer.Anonymizer;
 import anonymizer.Configuration;
 import anonymizer.EquivalenceTable;
+import anonymizer.MemAnonRecordTable;
+import anonymizer.MemEquivalenceTable;
 
 /**
  * Implementation of the Incognito algorithm for k-anonymity that appeared
@@ -31,8 +34,11 @@ import anonymizer.EquivalenceTable;
  * </pre>
  * 
  * Our implementation uses the bottom-up precomputation optimization described 
- * in Section 3.3.2 of the paper. At any time during anonymization, only the original table
- * and lattice entries that are k-anonymous are kept on the database. 
+ * in Section 3.3.2 of the paper: the frequency set of each lattice entry is rolled up from 
+ * the frequency set of a parent. At any time during anonymization, only the original table 
+ * is kept on the database; tables are built only for the selected lattice entry. Lattices of
+ * qi-attribute subsets are visited first, so that generalizations that fail on a subset 
+ * (Section 3.2 of the paper) are not evaluated. 
  * <p/>
  * After the entire generalization lattice is traversed (in breadth-first order), among all
  * successful anonymization, we choose the one that yields the maximum number of equivalence
@@ -41,6 +47,11 @@ import anonymizer.EquivalenceTable;
  * The paper discusses suppression as an option (the idea is the same as Datafly by Sweeney). Our
  * implementation allows suppression through the data member suppressionThreshold. When set to 0,
  * our method will simply disallow suppression.
+ * <p/>
+ * anonymize() can be called again after changeKAnonymityRequirement() (e.g., to sweep k). The
+ * original tables and their frequency set are kept, and the equivalence sizes of every 
+ * evaluated entry are remembered, so later runs check known entries without rolling up
+ * frequency sets and never re-read the input.
  */
 public class Incognito_K extends Anonymizer {
 	/**	Suppression threshold (set to 0 if not needed)*/
@@ -49,13 +60,26 @@ public class Incognito_K extends Anonymizer {
 	/** Lattice manager that controls how the generalization lattice is traversed */
 	private LatticeManager man;
 	
+	/** Depth of the DGH of each qi-attribute*/
+	private int[] dghDepths;
+	
+	/** Original (ungeneralized) tables, kept for later runs of anonymize()*/
+	private EquivalenceTable origEqTable = null;
+	private AnonRecordTable origAnonTable = null;
+	
+	/** Frequency set of the original tables*/
+	private FrequencySet origFreqSet = null;
+	
+	/** Equivalence sizes of every evaluated lattice entry (keyed by entry names)*/
+	private Hashtable<String, FrequencySet.SizeProfile> profiles = 
+		new Hashtable<String, FrequencySet.SizeProfile>();
+	
 	/**
 	 * Class constructor
 	 * @param conf Configuration instance
 	 */
 	public Incognito_K(Configuration conf) throws Exception{
 		super(conf);
-		int[] dghDepths = null;
 		
 		if(conf.k <= 0) { //validate input k, the privacy parameter
 			throw new Exception("Incognito: Parameter k should be set in the configuration file!!");
@@ -65,17 +89,12 @@ public class Incognito_K extends Anonymizer {
 		for(int i = 0; i < dghDepths.length; i++) {
 			dghDepths[i] = conf.qidAtts[i].getVGHDepth(true);
 		}
-		sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
-		
-		//create a latticeManager
-		int[] root = new int[conf.qidAtts.length];
-		for(int i = 0; i < root.length; i++) {
-			root[i] = 0;
+		if(conf.storage == Configuration.STORAGE_SQLITE) {
+			sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
 		}
-		LatticeEntry superRoot = new LatticeEntry(root);
-		man = new LatticeManager(superRoot, dghDepths);
 		
-		//create tables
+		//create tables (named after the super root of the lattice)
+		LatticeEntry superRoot = new LatticeEntry(new int[conf.qidAtts.length]);
 		eqTable = createEquivalenceTable("eq_" + superRoot.toString()); 
 		anonTable = createAnonRecordsTable("an_" + superRoot.toString());
 	}
@@ -95,6 +114,9 @@ public class Incognito_K extends Anonymizer {
 	 * @return A new equivalence table
 	 */
 	protected EquivalenceTable createEquivalenceTable(String tableName) {
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemEquivalenceTable(conf.qidAtts, tableName);
+		}
 		return new EquivalenceTable(conf.qidAtts, tableName);
 	}
 	
@@ -110,103 +132,136 @@ public class Incognito_K extends Anonymizer {
 		for(int i = 0; i < qiAtts.length; i++) {
 			qiAtts[i] = conf.qidAtts[i].index;
 		}
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemAnonRecordTable(qiAtts, new Integer[0], tableName);
+		}
 		return new AnonRecordTable(qiAtts, new Integer[0], tableName);
 	}
 	
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., before any generalization)
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected long insertTupleToEquivalenceTable(String[] vals) throws Exception{
-		return eqTable.insertTuple(vals);
+	protected long insertTupleToEquivalenceTable(double[] qiVals) throws Exception{
+		return eqTable.insertTuple(qiVals);
 	}
 	
-	/**
-	 * Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
-	 * @param eid Equivalence id of the equivalence to which the tuple belongs
-	 * @throws Exception
-	 */
-	protected void insertTupleToAnonTable(String[] vals, long eid) throws Exception{
-		//parse qi-attribute values
-		double[] qiVals = new double[conf.qidAtts.length];
-		for(int i = 0; i < conf.qidAtts.length; i++) {
-			String attVal = vals[conf.qidAtts[i].index];
-			if(conf.qidAtts[i].catDomMapping != null) {
-				qiVals[i] = conf.qidAtts[i].catDomMapping.get(attVal);
-			} else {
-				qiVals[i] = Double.parseDouble(attVal);
-			}
-		}
-		anonTable.insert(eid, qiVals, new double[0]);
+	@Override
+	protected boolean isReusable() {
+		return true;
 	}
 	
 	/**
-	 * Anonymizing the input. This function can be reused (with new k maybe), as long as 
-	 * eqTable and anonTable objects are fresh and the configuration has 
-	 * not changed.
+	 * Anonymizing the input. This function can be reused (with new k maybe) without reading
+	 * the input again; tables of the previous run are dropped.
 	 * @throws Exception
 	 */
 	public void anonymize() throws Exception{
 		/* Assuming that input data is already read, anonTable and eqTable 
-		 * contains the initial, ungeneralized tuple values. Therefore, for 
-		 * the first round, there is no need to build new tables. */
-		man.next();
-		if(satisfiesPrivacyDef(anonTable)) {
-			man.setResult(true, anonTable, eqTable);
+		 * contains the initial, ungeneralized tuple values. They are kept for 
+		 * later runs, only the selected generalization gets new tables. */
+		if(origAnonTable == null) { //first run
+			origEqTable = eqTable;
+			origAnonTable = anonTable;
+			origFreqSet = new FrequencySet(conf.qidAtts, eqTable, anonTable, -1);
+			profiles.put(new LatticeEntry(new int[conf.qidAtts.length]).toString(), 
+					origFreqSet.getSizeProfile());
+		} else if(anonTable != origAnonTable) { //drop the tables of the previous selection
+			eqTable.drop();
+			anonTable.drop();
+			eqTable = origEqTable;
+			anonTable = origAnonTable;
+		}
+		
+		LatticeEntry superRoot = new LatticeEntry(new int[conf.qidAtts.length]);
+		man = new LatticeManager(superRoot, dghDepths);
+		superRoot = man.next();
+		superRoot.freqSet = origFreqSet;
+		if(satisfiesPrivacyDef(profiles.get(superRoot.toString()))) {
+			man.setResult(true, null, null); //tables are built if selected
 		} else {
 			man.setResult(false, null, null);
 		}
 		
-		//now continue with the children of the superRoot, if any
-		while(man.hasNext()) {
-			LatticeEntry currRoot = man.next();
-			generalize(currRoot);
-		}
+		//now continue with the children of the superRoot, if any (level by level)
+		LatticeManager.Evaluator evaluator = new LatticeManager.Evaluator() {
+			public boolean evaluate(LatticeEntry entry, LatticeEntry parent) throws Exception {
+				return Incognito_K.this.evaluate(entry, parent);
+			}
+		};
+		//generalizations that fail on a subset of qi-attributes will not be evaluated
+		man.evaluateSubsetLattices(evaluator, conf.numThreads);
+		man.evaluateLevels(evaluator, conf.numThreads);
 		
 		//select among successful generalizations
 		selectAnonymization(man.getSuccessfulEntries());
 	}
 	
 	/**
-	 * Checks whether the parameter table satisfies the privacy definition (in this case, 
-	 * k-anonymity with suppression)
-	 * @param table Table to be checked for anonymity
+	 * Checks whether the equivalence sizes of a generalization satisfy the privacy definition 
+	 * (in this case, k-anonymity with suppression)
+	 * @param profile Equivalence sizes of the frequency set to be checked for anonymity
+	 * @return true if the privacy definition is satisfied
+	 */
+	private boolean satisfiesPrivacyDef(FrequencySet.SizeProfile profile) {
+		return profile.checkKAnonymityRequirement(conf.k, suppressionThreshold);
+	}
+	
+	/**
+	 * Computes the frequency set of a lattice entry by rolling up the frequency set of a 
+	 * parent and checks whether the entry is anonymous or not. No tables are built here, 
+	 * only the selected entry is materialized (see materialize()). Entries of the same level
+	 * might be evaluated concurrently. Entries evaluated by a previous run are checked 
+	 * against their equivalence sizes only (their frequency sets are not computed).
+	 * @param root An entry of the generalization lattice that specifies how many 
+	 * times each qi-attribute will be generalized
+	 * @param parent An evaluated entry that generalizes to root (preferably the one with the 
+	 * smallest frequency set)
 	 * @return true if the privacy definition is satisfied
 	 * @throws Exception
 	 */
-	private boolean satisfiesPrivacyDef(AnonRecordTable table) throws Exception{
-		return table.checkKAnonymityRequirement(conf.k, suppressionThreshold);
+	private boolean evaluate(LatticeEntry root, LatticeEntry parent) throws Exception {
+		FrequencySet.SizeProfile profile = profiles.get(root.toString());
+		if(profile == null) {
+			int[] generalizations = new int[conf.qidAtts.length];
+			for(int i = 0; i < generalizations.length; i++) {
+				generalizations[i] = root.heightAt(i) - parent.heightAt(i);
+			}
+			root.freqSet = parent.freqSet.rollup(conf.qidAtts, generalizations);
+			profile = root.freqSet.getSizeProfile();
+			profiles.put(root.toString(), profile);
+		}
+		
+		//check if current generalization satisfies the privacy definition
+		return satisfiesPrivacyDef(profile);
 	}
 	
 	/**
 	 * Generalizes the original table according to a lattice entry and 
-	 * sets the result for the generated table as anonymous or not. If not, 
-	 * the corresponding table will be dropped from the database. If too,
-	 * this root will be added to the set of successful anonymizations.
+	 * sets the generated tables as the tables of the entry.
 	 * @param root An entry of the generalization lattice that specifies how many 
 	 * times each qi-attribute will be generalized
 	 * @throws Exception
 	 */
-	private void generalize(LatticeEntry root) throws Exception {
-		//collect root info, create anonTable and equivalenceTable objects
-		EquivalenceTable currET = createEquivalenceTable("eq_" + root.toString());
-		AnonRecordTable currAT = createAnonRecordsTable("an_" + root.toString());
+	private void materialize(LatticeEntry root) throws Exception {
+		//collect root info, create anonTable and equivalenceTable objects (names must differ 
+		// from those of the original tables, which are named after the super root)
+		EquivalenceTable currET = createEquivalenceTable("eq_sel_" + root.toString());
+		AnonRecordTable currAT = createAnonRecordsTable("an_sel_" + root.toString());
 		
-		String iterateEquivalences = "SELECT EID FROM " + eqTable.getName();
-		QueryResult result = sqlwrapper.executeQuery(iterateEquivalences);
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			Long oldEID = rs.getLong(1);
+		//map each equivalence of the original table to its generalization
+		LinkedHashMap<Long, String[]> generalizations = eqTable.getGeneralizations();
+		Hashtable<Long, Long> eidMapping = new Hashtable<Long, Long>();
+		Iterator<Long> eids = generalizations.keySet().iterator();
+		while(eids.hasNext()) {
+			Long oldEID = eids.next();
 			
 			//build new genVals - generalize each attribute root.heightAt(j) times
-			String[] genVals = eqTable.getGeneralization(oldEID);
+			String[] genVals = generalizations.get(oldEID);
 			for(int i = 0; i < genVals.length; i++) {
-				for(int j = 0; j < root.heightAt(i); j++) {
-					genVals[i] = conf.qidAtts[i].generalize(genVals[i]);
-				}
+				genVals[i] = conf.qidAtts[i].generalize(genVals[i], root.heightAt(i));
 			}
 			
 			//set new equivalence ID
@@ -214,17 +269,10 @@ public class Incognito_K extends Anonymizer {
 			if(newEID.compareTo(new Long(-1)) == 0) { //this equivalence does not exist yet, insert to get newEID
 				newEID = currET.insertEquivalence(genVals); //insert into newEqTable
 			}
-			currAT.copyFrom(anonTable, oldEID, newEID); //copy records from currAnon to newAnon
-		}
-		
-		//check if current generalization is k-anonymous
-		if(satisfiesPrivacyDef(currAT)) {
-			man.setResult(true, currAT, currET);
-		} else {
-			currAT.drop();
-			currET.drop();
-			man.setResult(false, null, null);
+			eidMapping.put(oldEID, newEID);
 		}
+		currAT.copyFrom(anonTable, eidMapping); //copy records from currAnon to newAnon with a single pass
+		root.setTables(currAT, currET);
 	}
 	
 	/**
@@ -234,7 +282,6 @@ public class Incognito_K extends Anonymizer {
 	private void selectAnonymization(LinkedList<LatticeEntry> anons) throws Exception{
 		int numEquivalences = 0; //maximum number of equivalences
 		LatticeEntry selection = null; //lattice entry of choice
-		LinkedList<Long> selectionSuppList = null; //suppression list of the selection
 		
 		//prepare the output message
 		String title = Integer.toString(conf.qidAtts[0].index);
@@ -247,28 +294,20 @@ public class Incognito_K extends Anonymizer {
 		System.out.println("Anonymous generalizations (" + anons.size() + ") :");
 		
 		ListIterator<LatticeEntry> iter = anons.listIterator();
-		LinkedList<Long> suppressionList = null;
 		while(iter.hasNext()) { //iterate through all successful anonymizations
 			try {
 				LatticeEntry root = iter.next(); //current root
 				System.out.println(root.toString());
 				//get the number of equivalences for the root
-				String count_SQL = "SELECT COUNT(*) FROM " + root.eqTable.getName();
-				QueryResult result = sqlwrapper.executeQuery(count_SQL);
-				int currNumEqs = ((ResultSet) result.next()).getInt(1);
-				//get the number of equivalences that will be suppressed
-				suppressionList = isReadyForSuppression(root.anonTable.getName());
-				//update for the net number
-				currNumEqs -= suppressionList.size();
+				FrequencySet.SizeProfile profile = profiles.get(root.toString());
+				int currNumEqs = profile.size();
+				//update for the net number (equivalences smaller than k will be suppressed)
+				currNumEqs -= profile.countEquivalencesSmallerThan(conf.k);
 				
 				//if the number of equivalences for the root is higher, update the choice
 				if(currNumEqs > numEquivalences) {
 					selection = root;
 					numEquivalences = currNumEqs;
-					selectionSuppList = suppressionList;
-				} else {
-					root.anonTable.drop();
-					root.eqTable.drop();
 				}
 			} catch(Exception e) {
 				e.printStackTrace();
@@ -278,18 +317,12 @@ public class Incognito_K extends Anonymizer {
 		if(selection == null) {
 			throw new Exception("No anonymous generalizations!!!");
 		} else {
-			//if necessary, drop the original tables
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				if(selection.heightAt(i) != 0) {
-					eqTable.drop();
-					anonTable.drop();
-					break;
-				}
-			}
+			//build the tables of the choice (the original tables are kept for later runs)
+			materialize(selection);
 			//set the choice
 			eqTable = selection.eqTable;
 			anonTable = selection.anonTable;
-			suppressEquivalences(selectionSuppList);
+			suppressEquivalences(isReadyForSuppression(anonTable));
 			
 			System.out.println("Selection: " + selection.toString());
 		}
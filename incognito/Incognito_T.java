@@ -1,17 +1,19 @@
 package incognito;
 
-import java.sql.ResultSet;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
 
-import sqlwrapper.QueryResult;
 import sqlwrapper.SqLiteSQLWrapper;
 import anonymizer.AnonRecordTable;
 import anonymizer.Anonymizer;
 import anonymizer.Configuration;
 import anonymizer.EquivalenceTable;
+import anonymizer.MemAnonRecordTable;
+import anonymizer.MemEquivalenceTable;
 
 /**
  * Implementation of the t-closeness privacy principle based on 
@@ -48,15 +50,32 @@ public class Incognito_T extends Anonymizer {
 	/** Lattice manager that controls how the generalization lattice is traversed */
 	private LatticeManager man;
 	
+	/** Depth of the DGH of each qi-attribute*/
+	private int[] dghDepths;
+	
+	/** Original (ungeneralized) tables, kept for later runs of anonymize()*/
+	private EquivalenceTable origEqTable = null;
+	private AnonRecordTable origAnonTable = null;
+	
+	/** Frequency set of the original tables*/
+	private FrequencySet origFreqSet = null;
+	
+	/** Number of equivalences and the largest distance to the
+	 * distribution of the entire table (see FrequencySet.getMaxDistance_Cat() and _Num()) of every evaluated lattice entry
+	 * (keyed by entry names)*/
+	private Hashtable<String, double[]> summaries = new Hashtable<String, double[]>();
+	
 	/** Number of values in the domain of the sensitive attribute */
 	private int sensDomainSize;
+	
+	/** Number of distinct sensitive values in the input (numerical sensitive attribute)*/
+	private int numSensitiveValues;
 	/**
 	 * Class constructor
 	 * @param conf Configuration instance
 	 */
 	public Incognito_T(Configuration conf) throws Exception{
 		super(conf);
-		int[] dghDepths = null;
 		
 		if(conf.t <= 0) { //validate input t, the privacy parameter
 			throw new Exception("Incognito: Parameter t should be set in the configuration file!!");
@@ -92,17 +111,12 @@ public class Incognito_T extends Anonymizer {
 		for(int i = 0; i < dghDepths.length; i++) {
 			dghDepths[i] = conf.qidAtts[i].getVGHDepth(true);
 		}
-		sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
-		
-		//create a latticeManager
-		int[] root = new int[conf.qidAtts.length];
-		for(int i = 0; i < root.length; i++) {
-			root[i] = 0;
+		if(conf.storage == Configuration.STORAGE_SQLITE) {
+			sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
 		}
-		LatticeEntry superRoot = new LatticeEntry(root);
-		man = new LatticeManager(superRoot, dghDepths);
 		
-		//create tables
+		//create tables (named after the super root of the lattice)
+		LatticeEntry superRoot = new LatticeEntry(new int[conf.qidAtts.length]);
 		eqTable = createEquivalenceTable("eq_" + superRoot.toString()); 
 		anonTable = createAnonRecordsTable("an_" + superRoot.toString());
 	}
@@ -121,6 +135,9 @@ public class Incognito_T extends Anonymizer {
 	 * @return A new equivalence table
 	 */
 	protected EquivalenceTable createEquivalenceTable(String tableName) {
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemEquivalenceTable(conf.qidAtts, tableName);
+		}
 		return new EquivalenceTable(conf.qidAtts, tableName);
 	}
 	
@@ -137,69 +154,68 @@ public class Incognito_T extends Anonymizer {
 		}
 		Integer[] sensAtts = new Integer[1];
 		sensAtts[0] = conf.sensitiveAtts[0].index;
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemAnonRecordTable(qiAtts, sensAtts, tableName);
+		}
 		return new AnonRecordTable(qiAtts, sensAtts, tableName);
 	}
 	
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., before any generalization)
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected long insertTupleToEquivalenceTable(String[] vals) throws Exception{
-		return eqTable.insertTuple(vals);
+	protected long insertTupleToEquivalenceTable(double[] qiVals) throws Exception{
+		return eqTable.insertTuple(qiVals);
 	}
 	
-	/**
-	 * Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
-	 * @param eid Equivalence id of the equivalence to which the tuple belongs
-	 * @throws Exception
-	 */
-	protected void insertTupleToAnonTable(String[] vals, long eid) throws Exception{
-		//parse qi-attribute values
-		double[] qiVals = new double[conf.qidAtts.length];
-		for(int i = 0; i < conf.qidAtts.length; i++) {
-			String attVal = vals[conf.qidAtts[i].index];
-			if(conf.qidAtts[i].catDomMapping != null) {
-				qiVals[i] = conf.qidAtts[i].catDomMapping.get(attVal);
-			} else {
-				qiVals[i] = Double.parseDouble(attVal);
-			}
-		}
-		//parse sensitive attribute value
-		String sensitiveValue = vals[conf.sensitiveAtts[0].index];
-		double[] sensVals = new double[1];
-		if(conf.sensitiveAtts[0].catDomMapping != null) {
-			sensVals[0] = conf.sensitiveAtts[0].catDomMapping.get(sensitiveValue);
-		} else {
-			sensVals[0] = Double.parseDouble(sensitiveValue);
-		}
-		anonTable.insert(eid, qiVals, sensVals);
+	@Override
+	protected boolean isReusable() {
+		return true;
 	}
 	
 	/**
-	 * Anonymizing the input. This function can be reused (with new t maybe), as long as 
-	 * eqTable and anonTable objects are fresh and the configuration has 
-	 * not changed.
+	 * Anonymizing the input. This function can be reused (with new t maybe) without reading
+	 * the input again; tables of the previous run are dropped.
 	 * @throws Exception
 	 */
 	public void anonymize() throws Exception{
 		/* Assuming that input data is already read, anonTable and eqTable 
-		 * contains the initial, ungeneralized tuple values. Therefore, for 
-		 * the first round, there is no need to build new tables. */
-		man.next();
-		if(satisfiesPrivacyDef(anonTable)) {
-			man.setResult(true, anonTable, eqTable);
+		 * contains the initial, ungeneralized tuple values. They are kept for 
+		 * later runs, only the selected generalization gets new tables. */
+		LatticeEntry superRoot = new LatticeEntry(new int[conf.qidAtts.length]);
+		if(origAnonTable == null) { //first run
+			origEqTable = eqTable;
+			origAnonTable = anonTable;
+			origFreqSet = new FrequencySet(conf.qidAtts, eqTable, anonTable, conf.sensitiveAtts[0].index);
+			numSensitiveValues = origFreqSet.countSensitiveValues();
+			summaries.put(superRoot.toString(), summarize(origFreqSet));
+		} else if(anonTable != origAnonTable) { //drop the tables of the previous selection
+			eqTable.drop();
+			anonTable.drop();
+			eqTable = origEqTable;
+			anonTable = origAnonTable;
+		}
+		
+		man = new LatticeManager(superRoot, dghDepths);
+		superRoot = man.next();
+		superRoot.freqSet = origFreqSet;
+		if(satisfiesPrivacyDef(superRoot.freqSet)) {
+			man.setResult(true, null, null); //tables are built if selected
 		} else {
 			man.setResult(false, null, null);
 		}
 		
-		//now continue with the children of the superRoot, if any
-		while(man.hasNext()) {
-			LatticeEntry currRoot = man.next();
-			generalize(currRoot);
-		}
+		//now continue with the children of the superRoot, if any (level by level)
+		LatticeManager.Evaluator evaluator = new LatticeManager.Evaluator() {
+			public boolean evaluate(LatticeEntry entry, LatticeEntry parent) throws Exception {
+				return Incognito_T.this.evaluate(entry, parent);
+			}
+		};
+		//generalizations that fail on a subset of qi-attributes will not be evaluated
+		man.evaluateSubsetLattices(evaluator, conf.numThreads);
+		man.evaluateLevels(evaluator, conf.numThreads);
 		
 		//select among successful generalizations
 		selectAnonymization(man.getSuccessfulEntries());
@@ -220,32 +236,90 @@ public class Incognito_T extends Anonymizer {
 		}
 	}
 	
+	/**
+	 * Checks whether the frequency set of a generalization satisfies the privacy definition 
+	 * (in this case, t-closeness)
+	 * @param freqSet Frequency set to be checked for anonymity
+	 * @return true if the privacy definition is satisfied
+	 */
+	public boolean satisfiesPrivacyDef(FrequencySet freqSet) {
+		if(conf.sensitiveAtts[0].catDomMapping != null) {
+			return freqSet.checkTClosenessRequirement_Cat(conf.t, sensDomainSize);	
+		} else {
+			return freqSet.checkTClosenessRequirement_Num(conf.t);
+		}
+	}
+	
+	/**
+	 * Computes the frequency set of a lattice entry by rolling up the frequency set of a 
+	 * parent and checks whether the entry is anonymous or not. No tables are built here, 
+	 * only the selected entry is materialized (see materialize()). Entries of the same level
+	 * might be evaluated concurrently. Entries evaluated by a previous run are checked 
+	 * against their summaries only (their frequency sets are not computed).
+	 * @param root An entry of the generalization lattice that specifies how many 
+	 * times each qi-attribute will be generalized
+	 * @param parent An evaluated entry that generalizes to root (preferably the one with the 
+	 * smallest frequency set)
+	 * @return true if the privacy definition is satisfied
+	 * @throws Exception
+	 */
+	private boolean evaluate(LatticeEntry root, LatticeEntry parent) throws Exception {
+		double[] summary = summaries.get(root.toString());
+		if(summary == null) {
+			int[] generalizations = new int[conf.qidAtts.length];
+			for(int i = 0; i < generalizations.length; i++) {
+				generalizations[i] = root.heightAt(i) - parent.heightAt(i);
+			}
+			root.freqSet = parent.freqSet.rollup(conf.qidAtts, generalizations);
+			summary = summarize(root.freqSet);
+			summaries.put(root.toString(), summary);
+		}
+		
+		//check if current generalization satisfies the privacy definition
+		if(conf.sensitiveAtts[0].catDomMapping != null) {
+			return summary[1] <= conf.t;
+		} else {
+			return !(summary[1] > conf.t * (numSensitiveValues - 1));
+		}
+	}
+	
+	/**
+	 * Summarizes a frequency set, so that t-closeness can be checked for any t
+	 * @param freqSet A frequency set
+	 * @return Number of equivalences and the largest distance
+	 */
+	private double[] summarize(FrequencySet freqSet) {
+		if(conf.sensitiveAtts[0].catDomMapping != null) {
+			return new double[] {freqSet.size(), freqSet.getMaxDistance_Cat(sensDomainSize)};
+		} else {
+			return new double[] {freqSet.size(), freqSet.getMaxDistance_Num()};
+		}
+	}
+	
 	/**
 	 * Generalizes the original table according to a lattice entry and 
-	 * sets the result for the generated table as anonymous or not. If not, 
-	 * the corresponding table will be dropped from the database. If too,
-	 * this root will be added to the set of successful anonymizations.
+	 * sets the generated tables as the tables of the entry.
 	 * @param root An entry of the generalization lattice that specifies how many 
 	 * times each qi-attribute will be generalized
 	 * @throws Exception
 	 */
-	private void generalize(LatticeEntry root) throws Exception {
-		//collect root info, create anonTable and equivalenceTable objects
-		EquivalenceTable currET = createEquivalenceTable("eq_" + root.toString());
-		AnonRecordTable currAT = createAnonRecordsTable("an_" + root.toString());
+	private void materialize(LatticeEntry root) throws Exception {
+		//collect root info, create anonTable and equivalenceTable objects (names must differ 
+		// from those of the original tables, which are named after the super root)
+		EquivalenceTable currET = createEquivalenceTable("eq_sel_" + root.toString());
+		AnonRecordTable currAT = createAnonRecordsTable("an_sel_" + root.toString());
 		
-		String iterateEquivalences = "SELECT EID FROM " + eqTable.getName();
-		QueryResult result = sqlwrapper.executeQuery(iterateEquivalences);
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			Long oldEID = rs.getLong(1);
+		//map each equivalence of the original table to its generalization
+		LinkedHashMap<Long, String[]> generalizations = eqTable.getGeneralizations();
+		Hashtable<Long, Long> eidMapping = new Hashtable<Long, Long>();
+		Iterator<Long> eids = generalizations.keySet().iterator();
+		while(eids.hasNext()) {
+			Long oldEID = eids.next();
 			
 			//build new genVals - generalize each attribute root.heightAt(j) times
-			String[] genVals = eqTable.getGeneralization(oldEID);
+			String[] genVals = generalizations.get(oldEID);
 			for(int i = 0; i < genVals.length; i++) {
-				for(int j = 0; j < root.heightAt(i); j++) {
-					genVals[i] = conf.qidAtts[i].generalize(genVals[i]);
-				}
+				genVals[i] = conf.qidAtts[i].generalize(genVals[i], root.heightAt(i));
 			}
 			
 			//set new equivalence ID
@@ -253,17 +327,10 @@ public class Incognito_T extends Anonymizer {
 			if(newEID.compareTo(new Long(-1)) == 0) { //this equivalence does not exist yet, insert to get newEID
 				newEID = currET.insertEquivalence(genVals); //insert into newEqTable
 			}
-			currAT.copyFrom(anonTable, oldEID, newEID); //copy records from currAnon to newAnon
-		}
-		
-		//check if current generalization is k-anonymous
-		if(satisfiesPrivacyDef(currAT)) {
-			man.setResult(true, currAT, currET);
-		} else {
-			currAT.drop();
-			currET.drop();
-			man.setResult(false, null, null);
+			eidMapping.put(oldEID, newEID);
 		}
+		currAT.copyFrom(anonTable, eidMapping); //copy records from currAnon to newAnon with a single pass
+		root.setTables(currAT, currET);
 	}
 	
 	/**
@@ -290,17 +357,12 @@ public class Incognito_T extends Anonymizer {
 				LatticeEntry root = iter.next(); //current root
 				System.out.println(root.toString());
 				//get the number of equivalences for the root
-				String count_SQL = "SELECT COUNT(*) FROM " + root.eqTable.getName();
-				QueryResult result = sqlwrapper.executeQuery(count_SQL);
-				int currNumEqs = ((ResultSet) result.next()).getInt(1);
+				int currNumEqs = (int) summaries.get(root.toString())[0];
 				
 				//if the number of equivalences for the root is higher, update the choice
 				if(currNumEqs > numEquivalences) {
 					selection = root;
 					numEquivalences = currNumEqs;
-				} else {
-					root.anonTable.drop();
-					root.eqTable.drop();
 				}
 			} catch(Exception e) {
 				e.printStackTrace();
@@ -310,14 +372,8 @@ public class Incognito_T extends Anonymizer {
 		if(selection == null) {
 			throw new Exception("No anonymous generalizations!!!");
 		} else {
-			//if necessary, drop the original tables
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				if(selection.heightAt(i) != 0) {
-					eqTable.drop();
-					anonTable.drop();
-					break;
-				}
-			}
+			//build the tables of the choice (the original tables are kept for later runs)
+			materialize(selection);
 			//set the choice
 			eqTable = selection.eqTable;
 			anonTable = selection.anonTable;
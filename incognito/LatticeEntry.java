@@ -27,6 +27,9 @@ public class LatticeEntry {
 	/** Equivalence table that corresponds to this entry (filled in if successful) */
 	public EquivalenceTable eqTable;
 	
+	/** Frequency set that corresponds to this entry (filled in when evaluated) */
+	public FrequencySet freqSet;
+	
 	/**
 	 * Class constructor for the superroot (i.e., entry of the original table). 
 	 * @param root Integer array of all 0s (size = number of qi-attributes)
@@ -88,9 +91,22 @@ public class LatticeEntry {
 	 * @return Parent's name
 	 */
 	public String parentsName() {
+		return parentsName(incIndex);
+	}
+	
+	/**
+	 * Get the string representation of the parent that is generalized once less 
+	 * on the qi-attribute at index
+	 * @param index The index of a quasi-identifier
+	 * @return Parent's name or null if the attribute is not generalized
+	 */
+	public String parentsName(int index) {
+		if(root[index] == 0) {
+			return null;
+		}
 		//create the roots for parent
 		int[] parentRoot = root.clone();
-		parentRoot[incIndex]--;
+		parentRoot[index]--;
 		
 		//convert to String
 		String retVal = Integer.toString(parentRoot[0]);
@@ -100,6 +116,25 @@ public class LatticeEntry {
 		return retVal;
 	}
 	
+	/**
+	 * Get the string representation of the projection of this entry that excludes the
+	 * qi-attribute at index (i.e., that generalizes the attribute to the suppression value)
+	 * @param index The index of a quasi-identifier
+	 * @param depth Depth of the DGH of the quasi-identifier
+	 * @return Projection's name
+	 */
+	public String projectionsName(int index, int depth) {
+		int[] projRoot = root.clone();
+		projRoot[index] = depth;
+		
+		//convert to String
+		String retVal = Integer.toString(projRoot[0]);
+		for(int i = 1; i < projRoot.length; i++) {
+			retVal += "_" + projRoot[i];
+		}
+		return retVal;
+	}
+	
 	public void setTables(AnonRecordTable anonTable, EquivalenceTable eqTable) {
 		this.anonTable = anonTable;
 		this.eqTable = eqTable;
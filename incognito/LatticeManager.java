@@ -1,6 +1,13 @@
 package incognito;
 
+import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import anonymizer.AnonRecordTable;
 import anonymizer.EquivalenceTable;
@@ -8,8 +15,32 @@ import anonymizer.EquivalenceTable;
 /**
  * Constructed from a super root and the depth of quasi-identifier attributes, 
  * this class manages the generalization lattice entries. 
+ * <p/>
+ * Entries can either be visited one at a time (hasNext(), next() and setResult()), or 
+ * level by level with evaluateLevels(), which evaluates all entries of a level concurrently. 
+ * Entries of the same level are independent of each other, and the apriori rule only affects
+ * the generation of the next level, therefore both yield the same results.
+ * <p/>
+ * Before visiting the entire lattice, the lattices of qi-attribute subsets can be visited
+ * with evaluateSubsetLattices() (see Section 3.2 of the Incognito paper). Entries that fail 
+ * on a subset are then known to fail without being evaluated.
  */
 public class LatticeManager {
+	/**
+	 * Evaluates a single lattice entry. Implementations may be called concurrently for 
+	 * the entries of the same level.
+	 */
+	public interface Evaluator {
+		/**
+		 * @param entry A lattice entry
+		 * @param parent The visited entry with the smallest frequency set that generalizes
+		 * to entry (the super root if no parent was evaluated)
+		 * @return true if the entry satisfies the privacy/anonymity requirement
+		 * @throws Exception
+		 */
+		public boolean evaluate(LatticeEntry entry, LatticeEntry parent) throws Exception;
+	}
+	
 	/**	Depths of qi-attributes */
 	private int[] dghDepths = null;
 	
@@ -22,6 +53,22 @@ public class LatticeManager {
 	private LatticeEntry lastReturned;
 	/** List of successfully anonymized lattice entries*/
 	private LinkedList<LatticeEntry> successfulEntries;
+	/** Successfully anonymized lattice entries, for membership checks*/
+	private HashSet<LatticeEntry> successfulSet;
+	
+	/** Entries of the previous level that were visited (keyed by name)*/
+	private Hashtable<String, LatticeEntry> prevLevelEntries;
+	/** Entries of the current level that were visited so far (keyed by name)*/
+	private Hashtable<String, LatticeEntry> currLevelEntries;
+	
+	/** Entry of the original table*/
+	private LatticeEntry superRoot;
+	/** Successful entries of the lattices of qi-attribute subsets (keyed by name)*/
+	private Hashtable<String, LatticeEntry> subsetSuccesses;
+	/** Names of unsuccessful entries of the lattices of qi-attribute subsets*/
+	private HashSet<String> subsetFailures;
+	/** true if this manages the lattice of a qi-attribute subset*/
+	private boolean isSubsetLattice = false;
 	
 	/**
 	 * Class constructor
@@ -36,6 +83,27 @@ public class LatticeManager {
 		nextEntryIndex = 0;
 		
 		successfulEntries = new LinkedList<LatticeEntry>();
+		successfulSet = new HashSet<LatticeEntry>();
+		prevLevelEntries = new Hashtable<String, LatticeEntry>();
+		currLevelEntries = new Hashtable<String, LatticeEntry>();
+		
+		this.superRoot = superRoot;
+		subsetSuccesses = new Hashtable<String, LatticeEntry>();
+		subsetFailures = new HashSet<String>();
+	}
+	
+	/**
+	 * Class constructor for the lattice of a qi-attribute subset
+	 * @param subsetRoot Lattice entry that generalizes the qi-attributes that are not in the 
+	 * subset to the suppression value, and no other qi-attributes
+	 * @param fullLattice Manager of the lattice of all qi-attributes
+	 */
+	private LatticeManager(LatticeEntry subsetRoot, LatticeManager fullLattice) {
+		this(subsetRoot, fullLattice.dghDepths);
+		this.superRoot = fullLattice.superRoot;
+		this.subsetSuccesses = fullLattice.subsetSuccesses;
+		this.subsetFailures = fullLattice.subsetFailures;
+		this.isSubsetLattice = true;
 	}
 	
 	/**
@@ -66,10 +134,49 @@ public class LatticeManager {
 				return false; //no more entries to visit
 			}
 			roots = newRoots.toArray(new LatticeEntry[0]);
+			//entries of the older level are no longer needed as parents
+			releaseFrequencySets(prevLevelEntries);
+			prevLevelEntries = currLevelEntries;
+			currLevelEntries = new Hashtable<String, LatticeEntry>();
 			return true;
 		}
 	}
 	
+	/**
+	 * Releases the frequency sets of unsuccessful entries (successful entries keep theirs
+	 * for the final selection, the super root keeps its own for entries without parents)
+	 * @param entries Visited lattice entries
+	 */
+	private void releaseFrequencySets(Hashtable<String, LatticeEntry> entries) {
+		for(LatticeEntry entry : entries.values()) {
+			if(entry != superRoot && !successfulSet.contains(entry)) {
+				entry.freqSet = null;
+			}
+		}
+	}
+	
+	/**
+	 * Among the visited parents of an entry, get the one with the smallest frequency set
+	 * (i.e., the cheapest one to roll up from)
+	 * @param entry A lattice entry of the current level
+	 * @return The cheapest parent, null if no parent was evaluated
+	 */
+	public LatticeEntry getCheapestParent(LatticeEntry entry) {
+		LatticeEntry cheapest = null;
+		for(int i = 0; i < dghDepths.length; i++) {
+			String name = entry.parentsName(i);
+			if(name == null) {
+				continue;
+			}
+			LatticeEntry parent = prevLevelEntries.get(name);
+			if(parent != null && parent.freqSet != null 
+					&& (cheapest == null || parent.freqSet.size() < cheapest.freqSet.size())) {
+				cheapest = parent;
+			}
+		}
+		return cheapest;
+	}
+	
 	/**
 	 * Getter for successful entries
 	 * @return list of lattice entries that map to k-anonymous views
@@ -87,21 +194,196 @@ public class LatticeManager {
 		return lastReturned;
 	}
 	
+	/**
+	 * Visits all remaining lattice entries, one level at a time. Entries of a level are 
+	 * evaluated by a pool of worker threads, results are then set in the order of the entries
+	 * (see setResult()). Unsuccessful entries are not provided any tables.
+	 * @param evaluator Evaluator of the entries
+	 * @param numThreads Number of worker threads (evaluates within the caller if <= 1)
+	 * @throws Exception
+	 */
+	public void evaluateLevels(Evaluator evaluator, int numThreads) throws Exception {
+		ExecutorService pool = null;
+		if(numThreads > 1) {
+			pool = Executors.newFixedThreadPool(numThreads);
+		}
+		try {
+			evaluateLevels(evaluator, pool);
+		} finally {
+			if(pool != null) {
+				pool.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Visits all remaining lattice entries, one level at a time
+	 * @param evaluator Evaluator of the entries
+	 * @param pool Worker threads (evaluates within the caller if null)
+	 * @throws Exception
+	 */
+	private void evaluateLevels(final Evaluator evaluator, ExecutorService pool) throws Exception {
+		while(hasNext()) {
+			//collect the unvisited entries of the current level
+			LatticeEntry[] level = new LatticeEntry[roots.length - nextEntryIndex];
+			System.arraycopy(roots, nextEntryIndex, level, 0, level.length);
+			
+			boolean[] results = new boolean[level.length];
+			LinkedList<Future<Boolean>> futures = new LinkedList<Future<Boolean>>();
+			LinkedList<Integer> submitted = new LinkedList<Integer>(); //indices of futures
+			for(int i = 0; i < level.length; i++) {
+				//first check whether the result is known from the lattices of subsets
+				final LatticeEntry entry = level[i];
+				LatticeEntry known = subsetSuccesses.get(entry.toString());
+				if(known != null) {
+					entry.freqSet = known.freqSet;
+					results[i] = true;
+					continue;
+				} else if(failsOnSubset(entry)) {
+					results[i] = false;
+					continue;
+				}
+				
+				LatticeEntry cheapest = getCheapestParent(entry);
+				final LatticeEntry parent = (cheapest != null) ? cheapest : superRoot;
+				if(pool == null) {
+					results[i] = evaluator.evaluate(entry, parent);
+				} else {
+					futures.add(pool.submit(new Callable<Boolean>() {
+						public Boolean call() throws Exception {
+							return evaluator.evaluate(entry, parent);
+						}
+					}));
+					submitted.add(i);
+				}
+			}
+			//wait for the workers
+			while(!futures.isEmpty()) {
+				try {
+					results[submitted.removeFirst()] = futures.removeFirst().get();
+				} catch(ExecutionException e) {
+					if(e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
+					}
+					throw e;
+				}
+			}
+			
+			//apply the results (and the apriori rule) before generating the next level
+			for(int i = 0; i < level.length; i++) {
+				next();
+				setResult(results[i], null, null);
+			}
+		}
+	}
+	
+	/**
+	 * Visits the lattices of qi-attribute subsets in increasing order of subset size. Based
+	 * on the subset property, a generalization that fails on a subset fails on any superset
+	 * as well, therefore evaluateLevels() will only evaluate the entries that pass on every
+	 * subset. Should be called after the super root was visited.
+	 * <p/>
+	 * The lattice of a subset consists of the entries that generalize each qi-attribute 
+	 * that is not in the subset to the suppression value (i.e., exclude the attribute).
+	 * @param evaluator Evaluator of the entries
+	 * @param numThreads Number of worker threads (evaluates within the caller if <= 1)
+	 * @throws Exception
+	 */
+	public void evaluateSubsetLattices(Evaluator evaluator, int numThreads) throws Exception {
+		if(successfulSet.contains(superRoot)) {
+			return; //all generalizations are successful, no need to visit the subsets
+		}
+		ExecutorService pool = null;
+		if(numThreads > 1) {
+			pool = Executors.newFixedThreadPool(numThreads);
+		}
+		try {
+			for(int size = 1; size < dghDepths.length; size++) {
+				//visit all subsets of the current size in lexicographical order
+				int[] subset = new int[size];
+				for(int i = 0; i < size; i++) {
+					subset[i] = i;
+				}
+				while(subset != null) {
+					int[] root = dghDepths.clone();
+					for(int i = 0; i < size; i++) {
+						root[subset[i]] = 0;
+					}
+					LatticeManager subsetLattice = new LatticeManager(new LatticeEntry(root), this);
+					subsetLattice.evaluateLevels(evaluator, pool);
+					subset = nextSubset(subset, dghDepths.length);
+				}
+			}
+		} finally {
+			if(pool != null) {
+				pool.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Get the next subset in lexicographical order
+	 * @param subset Indices of the current subset (in ascending order)
+	 * @param n Size of the entire set
+	 * @return Indices of the next subset of the same size, null if this was the last one
+	 */
+	private static int[] nextSubset(int[] subset, int n) {
+		int i = subset.length - 1;
+		while(i >= 0 && subset[i] == n - subset.length + i) {
+			i--;
+		}
+		if(i < 0) {
+			return null;
+		}
+		subset[i]++;
+		for(int j = i + 1; j < subset.length; j++) {
+			subset[j] = subset[j-1] + 1;
+		}
+		return subset;
+	}
+	
+	/**
+	 * Checks whether an entry is known to fail on the lattice of some qi-attribute subset
+	 * @param entry A lattice entry
+	 * @return true if the entry or one of its projections has failed
+	 */
+	private boolean failsOnSubset(LatticeEntry entry) {
+		if(subsetFailures.contains(entry.toString())) {
+			return true;
+		}
+		for(int i = 0; i < dghDepths.length; i++) {
+			if(entry.heightAt(i) < dghDepths[i] 
+					&& subsetFailures.contains(entry.projectionsName(i, dghDepths[i]))) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Set the anonymization result for the last lattice entry.
 	 * @param successFlag true if the last returned entry satisfied 
 	 * the privacy/anonymity requirement, false otherwise
 	 */
 	public void setResult(boolean successFlag, AnonRecordTable anonTable, EquivalenceTable eqTable) {		
+		currLevelEntries.put(lastReturned.toString(), lastReturned);
+		if(isSubsetLattice) { //keep the result for the lattices of supersets
+			if(successFlag) {
+				subsetSuccesses.put(lastReturned.toString(), lastReturned);
+			} else {
+				subsetFailures.add(lastReturned.toString());
+			}
+		}
 		if(successFlag) { //if successful
 			lastReturned.setTables(anonTable, eqTable);
 			successfulEntries.add(lastReturned);
+			successfulSet.add(lastReturned);
 			//set this root to null so that its children are not generated.
 			/* Based on the apriori rule, all generalizations (children) of a
 			 * node that satisfies the privacy definition, satisfy the definition 
 			 * as well. Therefore no need to check.*/
 			roots[nextEntryIndex] = null; 
-		} else {
+		} else if(!isSubsetLattice) {
 			System.out.println("Generalization " + lastReturned.toString() + " has failed");
 		}
 		nextEntryIndex++; //next time, return the sibling.
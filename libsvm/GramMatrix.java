@@ -0,0 +1,139 @@
+package libsvm;
+
+import java.io.*;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+//
+// Precomputed kernel (Gram) matrix of a data set
+//
+// the matrix is computed once (in parallel tiles, see svm.fill_gram) and stored as
+// float in a memory-mapped temporary file, so that it lives outside the heap and is
+// shared by every problem (e.g., cross-validation folds) whose rows come from the data set.
+// Kernel looks rows up by identity (see indexOf), so problems should hold the svm_node[]
+// objects of the data set (see share and mySvmUtil.readProblem).
+//
+public class GramMatrix {
+	private static final int segment_bits = 27; // 2^27 floats (512MB) per mapped segment
+	private static final long segment_mask = (1L << segment_bits) - 1;
+
+	private final int l;
+	private final svm_node[][] x;
+	private final double gamma;
+	private final IdentityHashMap<svm_node[], Integer> rows;
+	private final HashMap<String, List<Integer>> keys; // rows with the same features
+	private final FloatBuffer[] segments;
+
+	public GramMatrix(svm_problem prob, svm_parameter param) throws IOException
+	{
+		l = prob.l;
+		x = prob.x.clone();
+		gamma = param.gamma;
+		rows = new IdentityHashMap<svm_node[], Integer>();
+		keys = new HashMap<String, List<Integer>>();
+		for(int i=0;i<l;i++)
+		{
+			if(rows.containsKey(x[i])) x[i] = x[i].clone(); // each row needs its own key
+			rows.put(x[i], i);
+			String key = key(x[i]);
+			List<Integer> same = keys.get(key);
+			if(same == null)
+			{
+				same = new ArrayList<Integer>();
+				keys.put(key, same);
+			}
+			same.add(i);
+		}
+
+		// map the packed upper triangle
+		long size = (long)l*(l+1)/2;
+		int nr_segments = (int)((size + segment_mask) >>> segment_bits);
+		segments = new FloatBuffer[nr_segments];
+		File file = File.createTempFile("gram", ".bin");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		FileChannel channel = raf.getChannel();
+		for(int s=0;s<nr_segments;s++)
+		{
+			long start = (long)s << segment_bits;
+			long len = Math.min(size - start, 1L << segment_bits);
+			segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, 4*start, 4*len).asFloatBuffer();
+		}
+		channel.close();
+		raf.close();
+		if(!file.delete()) file.deleteOnExit(); // mappings remain valid
+
+		// identical vectors still share an array in prob.x, so that the kernel of the fill
+		// computes each pair of prototypes once (see Kernel.proto_cache)
+		svm.fill_gram(this, prob.x, param);
+	}
+
+	private static long offset(int i, int j)
+	{
+		if(i > j)
+			return (long)i*(i+1)/2 + j;
+		return (long)j*(j+1)/2 + i;
+	}
+
+	void put(int i, int j, float value)
+	{
+		long offset = offset(i,j);
+		segments[(int)(offset >>> segment_bits)].put((int)(offset & segment_mask), value);
+	}
+
+	// kernel value of rows i and j of the data set
+	public float get(int i, int j)
+	{
+		long offset = offset(i,j);
+		return segments[(int)(offset >>> segment_bits)].get((int)(offset & segment_mask));
+	}
+
+	// row of the data set that is the object x, -1 if x is not a row of the data set
+	public int indexOf(svm_node[] x)
+	{
+		Integer i = rows.get(x);
+		return (i == null) ? -1 : i;
+	}
+
+	// replaces each vector of x (e.g., the rows of a subset of the data set) by a row of the
+	// data set with the same features. Occurrences of the same features get distinct rows, since
+	// the expected kernel of two records is not the one of a record with itself.
+	// vectors left without a row are kept
+	public void share(svm_node[][] x)
+	{
+		HashMap<String, Integer> used = new HashMap<String, Integer>();
+		for(int i=0;i<x.length;i++)
+		{
+			String key = key(x[i]);
+			List<Integer> same = keys.get(key);
+			if(same == null) continue;
+			Integer n = used.get(key);
+			if(n == null) n = 0;
+			if(n < same.size())
+			{
+				x[i] = this.x[same.get(n)];
+				used.put(key, n+1);
+			}
+		}
+	}
+
+	// gamma the matrix is computed with
+	public double get_gamma()
+	{
+		return gamma;
+	}
+
+	public int size()
+	{
+		return l;
+	}
+
+	// features of x as a string
+	static String key(svm_node[] x)
+	{
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i<x.length;i++)
+			sb.append(x[i].index).append(':').append(Double.doubleToLongBits(x[i].value)).append(' ');
+		return sb.toString();
+	}
+}
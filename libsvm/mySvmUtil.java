@@ -8,6 +8,7 @@ public class mySvmUtil {
 		BufferedReader fp = new BufferedReader(new FileReader(input_file_name));
 		Vector<String> vy = new Vector<String>();
 		Vector<svm_node[]> vx = new Vector<svm_node[]>();
+		HashMap<String,svm_node[]> prototypes = new HashMap<String,svm_node[]>(); //identical vectors share one array
 		int max_index = 0;
 
 		while(true)
@@ -27,6 +28,13 @@ public class mySvmUtil {
 				x[j].value = Double.parseDouble(st.nextToken());
 			}
 			if(m>0) max_index = Math.max(max_index, x[m-1].index);
+			if(param.kernel_type != svm_parameter.PRECOMPUTED)
+			{
+				String key = GramMatrix.key(x);
+				svm_node[] prototype = prototypes.get(key);
+				if(prototype != null) x = prototype;
+				else prototypes.put(key, x);
+			}
 			vx.addElement(x);
 		}
 
@@ -40,7 +48,11 @@ public class mySvmUtil {
 			prob.y[i] = Double.parseDouble((String)vy.elementAt(i));
 
 		if(param.gamma == 0)
-			param.gamma = 1.0/max_index;
+			param.gamma = (param.gram != null) ? param.gram.get_gamma() : 1.0/max_index;
+
+		//share the rows of the precomputed kernel matrix, so that kernels look their values up
+		if(param.gram != null && param.gram.get_gamma() == param.gamma)
+			param.gram.share(prob.x);
 
 		if(param.kernel_type == svm_parameter.PRECOMPUTED)
 			for(int i=0;i<prob.l;i++)
@@ -60,6 +72,18 @@ public class mySvmUtil {
 		fp.close();
 		return prob;
 	}
+	/**
+	 * Computes the kernel matrix of a data set once, e.g., for all the folds of a cross-validation
+	 * @param input_file_name Data set (in libsvm format)
+	 * @param param Kernel parameters (gamma is set as in readProblem if 0)
+	 * @return The kernel matrix, to be set as param.gram of the problems read from subsets of the data set
+	 */
+	public static GramMatrix computeGramMatrix(String input_file_name, svm_parameter param) throws Exception{
+		svm_parameter gram_param = (svm_parameter)param.clone();
+		gram_param.gram = null;
+		svm_problem prob = readProblem(input_file_name, gram_param);
+		return new GramMatrix(prob, gram_param);
+	}
 	public static double predict(String inputFilename, svm_model model) throws IOException
 	{
 		FileReader myInputFile = new FileReader(inputFilename);
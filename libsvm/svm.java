@@ -5,18 +5,46 @@
 package libsvm;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import featRep.*;
 
 
+//
+// Kernel column cache
+//
+// get_data returns in data[0] an array holding the cached part [0,p) of the column;
+// the caller fills [p,len) and passes it back through put_data
+//
+abstract class ColumnCache {
+	long hits, misses;	// columns found complete / to be (partly) filled
+
+	abstract int get_data(int index, float[][] data, int len);
+	abstract void put_data(int index, float[] data, int start, int len);
+	abstract void swap_index(int i, int j);
+
+	// used is the part of the cache size taken by the kernel (see Kernel.proto_cache_size)
+	static ColumnCache create(int l, svm_parameter param, long used)
+	{
+		long size = (long)(param.cache_size*(1<<20)) - used;
+		if(param.cache_type == svm_parameter.OFFHEAP_CACHE)
+			return new OffHeapCache(l, size, param.cache_policy);
+		return new Cache(l, size);
+	}
+}
+
 //
 // Kernel Cache
 //
 // l is the number of total data items
 // size is the cache size limit in bytes
 //
-class Cache {
+class Cache extends ColumnCache {
 	private final int l;
 	private long size;
 	private final class head_t
@@ -69,6 +97,7 @@ class Cache {
 
 		if(more > 0)
 		{
+			misses++;
 			// free old space
 			while(size < more)
 			{
@@ -86,12 +115,18 @@ class Cache {
 			size -= more;
 			do {int _=h.len; h.len=len; len=_;} while(false);
 		}
+		else hits++;
 
 		lru_insert(h);
 		data[0] = h.data;
 		return len;
 	}
 
+	void put_data(int index, float[] data, int start, int len)
+	{
+		// data is the cached array
+	}
+
 	void swap_index(int i, int j)
 	{
 		if(i==j) return;
@@ -123,6 +158,275 @@ class Cache {
 	}
 }
 
+//
+// Off-heap kernel cache
+//
+// columns are stored in fixed slots of l floats in direct buffers, outside the heap, so that
+// large caches add no GC pressure. slot[i] is the slot of column i (-1 if not cached),
+// length[i] its cached length and column[s] the column in slot s (-1 if free).
+// get_data copies the cached part to one of two scratch arrays used alternately
+// (the solver uses at most two columns at a time, cf. SVR_Q), put_data copies it back.
+// policy chooses the column to evict when all slots are used
+//
+class OffHeapCache extends ColumnCache {
+	private final int l;
+	private final int nr_slots;
+	private final int slots_per_chunk;
+	private final FloatBuffer[] chunks;	// direct buffers are limited to 2GB
+	private final int[] slot;
+	private final int[] length;
+	private final int[] column;
+	private final int[] free;	// free slots
+	private int nr_free;
+	private final policy_t policy;
+	private final float[][] buffer;
+	private int next_buffer;
+
+	OffHeapCache(int l_, long size_, int cache_policy)
+	{
+		l = l_;
+		int width = Math.max(l, 1);
+		nr_slots = (int)Math.max(2, Math.min(width, size_/(4L*width)));
+		slots_per_chunk = Math.max(1, (Integer.MAX_VALUE/4)/width);
+		chunks = new FloatBuffer[(nr_slots + slots_per_chunk - 1)/slots_per_chunk];
+		for(int c=0;c<chunks.length;c++)
+		{
+			int slots = Math.min(slots_per_chunk, nr_slots - c*slots_per_chunk);
+			chunks[c] = ByteBuffer.allocateDirect(4*slots*width).order(ByteOrder.nativeOrder()).asFloatBuffer();
+		}
+		slot = new int[l];
+		length = new int[l];
+		Arrays.fill(slot, -1);
+		column = new int[nr_slots];
+		free = new int[nr_slots];
+		for(int s=0;s<nr_slots;s++)
+		{
+			column[s] = -1;
+			free[s] = nr_slots-1-s;
+		}
+		nr_free = nr_slots;
+		if(cache_policy == svm_parameter.LFU)
+			policy = new lfu_t(nr_slots);
+		else
+			policy = new lru_t(nr_slots);
+		buffer = new float[2][l];
+		next_buffer = 0;
+	}
+
+	private FloatBuffer chunk(int s)
+	{
+		FloatBuffer fb = chunks[s/slots_per_chunk];
+		fb.position((s%slots_per_chunk)*l);
+		return fb;
+	}
+
+	int get_data(int index, float[][] data, int len)
+	{
+		float[] buf = buffer[next_buffer];
+		next_buffer = 1 - next_buffer;
+		int s = slot[index];
+		if(s >= 0)
+		{
+			policy.access(s);
+			chunk(s).get(buf,0,Math.min(length[index],len));
+		}
+		if(length[index] >= len) hits++;
+		else misses++;
+		data[0] = buf;
+		return length[index];
+	}
+
+	void put_data(int index, float[] data, int start, int len)
+	{
+		int s = slot[index];
+		if(s < 0)
+		{
+			if(nr_free == 0) evict(policy.victim());
+			s = free[--nr_free];
+			slot[index] = s;
+			column[s] = index;
+			policy.insert(s);
+		}
+		FloatBuffer fb = chunk(s);
+		fb.position(fb.position()+start);
+		fb.put(data,start,len-start);
+		if(len > length[index]) length[index] = len;
+	}
+
+	private void evict(int s)
+	{
+		int c = column[s];
+		slot[c] = -1;
+		length[c] = 0;
+		column[s] = -1;
+		policy.remove(s);
+		free[nr_free++] = s;
+	}
+
+	void swap_index(int i, int j)
+	{
+		if(i==j) return;
+
+		do {int _=slot[i]; slot[i]=slot[j]; slot[j]=_;} while(false);
+		do {int _=length[i]; length[i]=length[j]; length[j]=_;} while(false);
+		if(slot[i] >= 0) column[slot[i]] = i;
+		if(slot[j] >= 0) column[slot[j]] = j;
+
+		if(i>j) do {int _=i; i=j; j=_;} while(false);
+		for(int s=0;s<nr_slots;s++)
+		{
+			int c = column[s];
+			if(c >= 0 && length[c] > i)
+			{
+				if(length[c] > j)
+				{
+					FloatBuffer fb = chunks[s/slots_per_chunk];
+					int off = (s%slots_per_chunk)*l;
+					float _=fb.get(off+i); fb.put(off+i,fb.get(off+j)); fb.put(off+j,_);
+				}
+				else
+					evict(s);	// give up
+			}
+		}
+	}
+
+	// eviction policy over the used slots
+	private static abstract class policy_t
+	{
+		abstract void insert(int s);
+		abstract void access(int s);
+		abstract void remove(int s);
+		abstract int victim();
+	}
+
+	// least recently used: circular list of slots, n is the head
+	private static final class lru_t extends policy_t
+	{
+		private final int n;
+		private final int[] prev, next;
+
+		lru_t(int n_)
+		{
+			n = n_;
+			prev = new int[n+1];
+			next = new int[n+1];
+			prev[n] = next[n] = n;
+		}
+
+		void insert(int s)
+		{
+			// insert to last position
+			next[s] = n;
+			prev[s] = prev[n];
+			next[prev[s]] = s;
+			prev[n] = s;
+		}
+
+		void access(int s)
+		{
+			remove(s);
+			insert(s);
+		}
+
+		void remove(int s)
+		{
+			next[prev[s]] = next[s];
+			prev[next[s]] = prev[s];
+		}
+
+		int victim()
+		{
+			return next[n];
+		}
+	}
+
+	// least frequently used (least recently used among equally frequent):
+	// binary heap of slots on (count, last access)
+	private static final class lfu_t extends policy_t
+	{
+		private final int[] heap, pos;
+		private final long[] count, stamp;
+		private int size;
+		private long clock;
+
+		lfu_t(int n)
+		{
+			heap = new int[n];
+			pos = new int[n];
+			count = new long[n];
+			stamp = new long[n];
+			size = 0;
+			clock = 0;
+		}
+
+		private boolean less(int s, int t)
+		{
+			return count[s] < count[t] || (count[s] == count[t] && stamp[s] < stamp[t]);
+		}
+
+		private void place(int k, int s)
+		{
+			heap[k] = s;
+			pos[s] = k;
+		}
+
+		private void sift_up(int k)
+		{
+			int s = heap[k];
+			while(k > 0 && less(s, heap[(k-1)/2]))
+			{
+				place(k, heap[(k-1)/2]);
+				k = (k-1)/2;
+			}
+			place(k, s);
+		}
+
+		private void sift_down(int k)
+		{
+			int s = heap[k];
+			while(2*k+1 < size)
+			{
+				int c = 2*k+1;
+				if(c+1 < size && less(heap[c+1], heap[c])) c++;
+				if(!less(heap[c], s)) break;
+				place(k, heap[c]);
+				k = c;
+			}
+			place(k, s);
+		}
+
+		void insert(int s)
+		{
+			count[s] = 1;
+			stamp[s] = ++clock;
+			place(size, s);
+			sift_up(size++);
+		}
+
+		void access(int s)
+		{
+			count[s]++;
+			stamp[s] = ++clock;
+			sift_down(pos[s]);
+		}
+
+		void remove(int s)
+		{
+			int k = pos[s];
+			int last = heap[--size];
+			if(k == size) return;
+			place(k, last);
+			sift_up(k);
+			sift_down(pos[last]);
+		}
+
+		int victim()
+		{
+			return heap[0];
+		}
+	}
+}
+
 //
 // Kernel evaluation
 //
@@ -134,11 +438,18 @@ abstract class QMatrix {
 	abstract float[] get_Q(int column, int len);
 	abstract float[] get_QD();
 	abstract void swap_index(int i, int j);
+	ColumnCache get_cache() { return null; }
 };
 
 abstract class Kernel extends QMatrix {
 	private svm_node[][] x;
+	private final double[][] x_dense; // x compiled by fr for expected values (null if not compiled)
 	private final double[] x_square;
+	private final GramMatrix gram;
+	private final int[] gram_index; // row of x in gram (-1 if x is not a row of gram)
+	private final int[] proto;	// prototype of x (identical vectors share an svm_node[], cf. mySvmUtil.readProblem)
+	private final int[] proto_cache;	// float bits of the kernel of each pair of prototypes (null if not cached)
+	private static final int not_cached = 0x7fc00001;	// a NaN that floatToIntBits does not return
 
 	// svm_parameter
 	private final int kernel_type;
@@ -148,13 +459,21 @@ abstract class Kernel extends QMatrix {
 	private final FeatureRepresentation fr;
 	private final boolean useExpectedValues;
 
+	// columns are split across the pool in chunks of at most column_threshold entries
+	private static final int column_threshold = 256;
+	private static final HashMap<Integer,ForkJoinPool> pools = new HashMap<Integer,ForkJoinPool>();
+	private final ForkJoinPool pool;
+
 	abstract float[] get_Q(int column, int len);
 	abstract float[] get_QD();
 
 	void swap_index(int i, int j)
 	{
 		do {svm_node[] _=x[i]; x[i]=x[j]; x[j]=_;} while(false);
+		if(x_dense != null) do {double[] _=x_dense[i]; x_dense[i]=x_dense[j]; x_dense[j]=_;} while(false);
 		if(x_square != null) do {double _=x_square[i]; x_square[i]=x_square[j]; x_square[j]=_;} while(false);
+		if(gram_index != null) do {int _=gram_index[i]; gram_index[i]=gram_index[j]; gram_index[j]=_;} while(false);
+		if(proto != null) do {int _=proto[i]; proto[i]=proto[j]; proto[j]=_;} while(false);
 	}
 
 	private static double powi(double base, int times)
@@ -177,23 +496,44 @@ abstract class Kernel extends QMatrix {
 
 	double kernel_function(int i, int j)
 	{
+		if(gram_index != null && gram_index[i] >= 0 && gram_index[j] >= 0)
+			return gram.get(gram_index[i],gram_index[j]);
 		if(i == j && useExpectedValues) {
 			return kernel_function(i);
 		}
+		if(proto_cache != null)
+		{
+			// records with identical vectors have identical kernel values (off the diagonal),
+			// consumers only keep the float value
+			int p = proto[i], q = proto[j];
+			int k = (int)((p > q) ? (long)p*(p+1)/2 + q : (long)q*(q+1)/2 + p);
+			int bits = proto_cache[k];
+			if(bits != not_cached)
+				return Float.intBitsToFloat(bits);
+			float value = (float)pair_kernel(i,j);
+			proto_cache[k] = Float.floatToIntBits(value);
+			return value;
+		}
+		return pair_kernel(i,j);
+	}
+
+	private double pair_kernel(int i, int j)
+	{
 		switch(kernel_type)
 		{
 			case svm_parameter.LINEAR:
-				return dot(x[i],x[j], fr, useExpectedValues);
+				return dot(i,j);
 			case svm_parameter.POLY:
-				return powi(gamma*dot(x[i],x[j], fr, useExpectedValues)+coef0,degree);
+				return powi(gamma*dot(i,j)+coef0,degree);
 			case svm_parameter.RBF:
 				if(useExpectedValues) {
-					double sum = fr.squareDistance(x[i], x[j]);
+					double sum = (x_dense[i] != null && x_dense[j] != null) ?
+						fr.squareDistance(x_dense[i], x_dense[j]) : fr.squareDistance(x[i], x[j]);
 					return Math.exp(-gamma*sum);
 				}
 				return Math.exp(-gamma*(x_square[i]+x_square[j]-2*dot(x[i],x[j], fr, useExpectedValues)));
 			case svm_parameter.SIGMOID:
-				return tanh(gamma*dot(x[i],x[j],fr, useExpectedValues)+coef0);
+				return tanh(gamma*dot(i,j)+coef0);
 			case svm_parameter.PRECOMPUTED:
 				return x[i][(int)(x[j][0].value)].value;
 			default:
@@ -206,13 +546,13 @@ abstract class Kernel extends QMatrix {
 		switch(kernel_type)
 		{
 			case svm_parameter.LINEAR:
-				return fr.dotProduct(x[i]);
+				return dot(i);
 			case svm_parameter.POLY:
-				return powi(gamma*fr.dotProduct(x[i])+coef0,degree);
+				return powi(gamma*dot(i)+coef0,degree);
 			case svm_parameter.RBF:
 				return Math.exp(0);
 			case svm_parameter.SIGMOID:
-				return tanh(gamma*fr.dotProduct(x[i])+coef0);
+				return tanh(gamma*dot(i)+coef0);
 			case svm_parameter.PRECOMPUTED:
 				return x[i][(int)(x[i][0].value)].value;
 			default:
@@ -228,9 +568,61 @@ abstract class Kernel extends QMatrix {
 		this.coef0 = param.coef0;
 		this.fr = param.fr;
 		this.useExpectedValues = param.useExpectedValues;
+		this.pool = get_pool(param.nr_threads);
 
 		x = (svm_node[][])x_.clone();
 
+		this.gram = param.gram;
+		if(gram != null)
+		{
+			gram_index = new int[l];
+			for(int i=0;i<l;i++)
+				gram_index[i] = gram.indexOf(x[i]);
+		}
+		else gram_index = null;
+
+		// number the distinct vectors
+		IdentityHashMap<svm_node[],Integer> protos = new IdentityHashMap<svm_node[],Integer>();
+		int[] proto_ = new int[l];
+		int[] first = new int[l];	// first vector of each prototype
+		for(int i=0;i<l;i++)
+		{
+			Integer p = protos.get(x[i]);
+			if(p == null)
+			{
+				p = protos.size();
+				protos.put(x[i], p);
+				first[p] = i;
+			}
+			proto_[i] = p;
+		}
+		int nr_protos = protos.size();
+
+		// cache the expected kernel of prototype pairs if vectors repeat enough (e.g., equivalences
+		// of anonymized data) and the table fits in the cache size (it is taken from the column cache)
+		long entries = (long)nr_protos*(nr_protos+1)/2;
+		if(useExpectedValues && kernel_type != svm_parameter.PRECOMPUTED && 2*nr_protos <= l &&
+		   entries <= Math.min(Integer.MAX_VALUE-8, (long)(param.cache_size*(1<<20))/4))
+		{
+			proto = proto_;
+			proto_cache = new int[(int)entries];
+			Arrays.fill(proto_cache, not_cached);
+		}
+		else
+		{
+			proto = null;
+			proto_cache = null;
+		}
+
+		if(useExpectedValues)
+		{
+			// compile each distinct vector once, so that kernel evaluations need not merge sparse vectors
+			x_dense = new double[l][];
+			for(int i=0;i<l;i++)
+				x_dense[i] = (first[proto_[i]] < i) ? x_dense[first[proto_[i]]] : param.fr.compile(x[i]);
+		}
+		else x_dense = null;
+
 		if(kernel_type == svm_parameter.RBF)
 		{
 			x_square = new double[l];
@@ -246,6 +638,84 @@ abstract class Kernel extends QMatrix {
 		else x_square = null;
 	}
 
+	// bytes of the cache size taken by the prototype pairs
+	long proto_cache_size()
+	{
+		return (proto_cache == null) ? 0 : 4L*proto_cache.length;
+	}
+
+	// one pool per number of threads is shared by all kernels (e.g., the one-vs-one subproblems
+	// of svm_train). Pools are never shut down, since kernels may still use them (their threads
+	// are daemons and end when idle)
+	static synchronized ForkJoinPool get_pool(int nr_threads)
+	{
+		if(nr_threads <= 1) return null;
+		ForkJoinPool pool = pools.get(nr_threads);
+		if(pool == null)
+		{
+			pool = new ForkJoinPool(nr_threads);
+			pools.put(nr_threads, pool);
+		}
+		return pool;
+	}
+
+	// data[j] = y[i]*y[j]*K(i,j) (K(i,j) if y is null) for j in [start,len)
+	void fill_column(int i, float[] data, int start, int len, byte[] y)
+	{
+		if(pool == null || len - start <= column_threshold)
+			fill_column_serial(i,data,start,len,y);
+		else
+			pool.invoke(new ColumnTask(i,data,start,len,y));
+	}
+
+	private void fill_column_serial(int i, float[] data, int start, int len, byte[] y)
+	{
+		if(y != null)
+			for(int j=start;j<len;j++)
+				data[j] = (float)(y[i]*y[j]*kernel_function(i,j));
+		else
+			for(int j=start;j<len;j++)
+				data[j] = (float)kernel_function(i,j);
+	}
+
+	private class ColumnTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private final int i, start, len;
+		private final float[] data;
+		private final byte[] y;
+
+		ColumnTask(int i, float[] data, int start, int len, byte[] y)
+		{
+			this.i = i; this.data = data; this.start = start; this.len = len; this.y = y;
+		}
+
+		protected void compute()
+		{
+			if(len - start <= column_threshold)
+				fill_column_serial(i,data,start,len,y);
+			else
+			{
+				int mid = (start+len)>>>1;
+				invokeAll(new ColumnTask(i,data,start,mid,y), new ColumnTask(i,data,mid,len,y));
+			}
+		}
+	}
+
+	private double dot(int i)
+	{
+		if(x_dense[i] != null)
+			return fr.dotProduct(x_dense[i]);
+		return fr.dotProduct(x[i]);
+	}
+
+	private double dot(int i, int j)
+	{
+		if(useExpectedValues && x_dense[i] != null && x_dense[j] != null)
+			return fr.dotProduct(x_dense[i], x_dense[j]);
+		return dot(x[i],x[j], fr, useExpectedValues);
+	}
+
 	static double dot(svm_node[] x, svm_node[] y, FeatureRepresentation fr, boolean useExpectedValues)
 	{
 		if(useExpectedValues) {
@@ -674,6 +1144,9 @@ class Solver {
 		si.upper_bound_p = Cp;
 		si.upper_bound_n = Cn;
 
+		ColumnCache cache = Q.get_cache();
+		if(cache != null) svm.add_cache_stats(cache.hits, cache.misses);
+
 		//System.out.print("\noptimization finished, #iter = "+iter+"\n");
 	}
 
@@ -1188,14 +1661,14 @@ final class Solver_NU extends Solver
 class SVC_Q extends Kernel
 {
 	private final byte[] y;
-	private final Cache cache;
+	private final ColumnCache cache;
 	private final float[] QD;
 
 	SVC_Q(svm_problem prob, svm_parameter param, byte[] y_)
 	{
 		super(prob.l, prob.x, param);
 		y = (byte[])y_.clone();
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		cache = ColumnCache.create(prob.l,param,proto_cache_size());
 		QD = new float[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i]= (float)kernel_function(i,i);
@@ -1207,8 +1680,8 @@ class SVC_Q extends Kernel
 		int start;
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(int j=start;j<len;j++)
-				data[0][j] = (float)(y[i]*y[j]*kernel_function(i,j));
+			fill_column(i,data[0],start,len,y);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
@@ -1218,6 +1691,11 @@ class SVC_Q extends Kernel
 		return QD;
 	}
 
+	ColumnCache get_cache()
+	{
+		return cache;
+	}
+
 	void swap_index(int i, int j)
 	{
 		cache.swap_index(i,j);
@@ -1229,13 +1707,13 @@ class SVC_Q extends Kernel
 
 class ONE_CLASS_Q extends Kernel
 {
-	private final Cache cache;
+	private final ColumnCache cache;
 	private final float[] QD;
 
 	ONE_CLASS_Q(svm_problem prob, svm_parameter param)
 	{
 		super(prob.l, prob.x, param);
-		cache = new Cache(prob.l,(long)(param.cache_size*(1<<20)));
+		cache = ColumnCache.create(prob.l,param,proto_cache_size());
 		QD = new float[prob.l];
 		for(int i=0;i<prob.l;i++)
 			QD[i]= (float)kernel_function(i,i);
@@ -1247,8 +1725,8 @@ class ONE_CLASS_Q extends Kernel
 		int start;
 		if((start = cache.get_data(i,data,len)) < len)
 		{
-			for(int j=start;j<len;j++)
-				data[0][j] = (float)kernel_function(i,j);
+			fill_column(i,data[0],start,len,null);
+			cache.put_data(i,data[0],start,len);
 		}
 		return data[0];
 	}
@@ -1258,6 +1736,11 @@ class ONE_CLASS_Q extends Kernel
 		return QD;
 	}
 
+	ColumnCache get_cache()
+	{
+		return cache;
+	}
+
 	void swap_index(int i, int j)
 	{
 		cache.swap_index(i,j);
@@ -1269,7 +1752,7 @@ class ONE_CLASS_Q extends Kernel
 class SVR_Q extends Kernel
 {
 	private final int l;
-	private final Cache cache;
+	private final ColumnCache cache;
 	private final byte[] sign;
 	private final int[] index;
 	private int next_buffer;
@@ -1280,7 +1763,7 @@ class SVR_Q extends Kernel
 	{
 		super(prob.l, prob.x, param);
 		l = prob.l;
-		cache = new Cache(l,(long)(param.cache_size*(1<<20)));
+		cache = ColumnCache.create(l,param,proto_cache_size());
 		QD = new float[2*l];
 		sign = new byte[2*l];
 		index = new int[2*l];
@@ -1308,10 +1791,11 @@ class SVR_Q extends Kernel
 	{
 		float[][] data = new float[1][];
 		int real_i = index[i];
-		if(cache.get_data(real_i,data,l) < l)
+		int start;
+		if((start = cache.get_data(real_i,data,l)) < l)
 		{
-			for(int j=0;j<l;j++)
-				data[0][j] = (float)kernel_function(real_i,j);
+			fill_column(real_i,data[0],start,l,null);
+			cache.put_data(real_i,data[0],start,l);
 		}
 
 		// reorder and copy
@@ -1327,9 +1811,84 @@ class SVR_Q extends Kernel
 	{
 		return QD;
 	}
+
+	ColumnCache get_cache()
+	{
+		return cache;
+	}
 }
 
 public class svm {
+	//
+	// kernel cache statistics, accumulated over the solvers
+	//
+	private static long cache_hits = 0, cache_misses = 0;
+
+	static synchronized void add_cache_stats(long hits, long misses)
+	{
+		cache_hits += hits;
+		cache_misses += misses;
+	}
+
+	// returns {hits, misses} of the kernel caches since the last reset
+	public static synchronized long[] get_cache_stats()
+	{
+		return new long[] {cache_hits, cache_misses};
+	}
+
+	public static synchronized void reset_cache_stats()
+	{
+		cache_hits = cache_misses = 0;
+	}
+
+	//
+	// fills gram with the kernel of param (without a Gram matrix) of the rows x,
+	// in parallel tiles on or above the diagonal
+	//
+	private static final int gram_tile_size = 128;
+
+	static void fill_gram(final GramMatrix gram, svm_node[][] x, svm_parameter param)
+	{
+		final int l = x.length;
+		svm_parameter kernel_param = (svm_parameter)param.clone();
+		kernel_param.gram = null;
+		final Kernel kernel = new Kernel(l, x, kernel_param) {
+			float[] get_Q(int column, int len) { return null; }
+			float[] get_QD() { return null; }
+		};
+
+		final List<RecursiveAction> tiles = new ArrayList<RecursiveAction>();
+		for(int bi=0;bi<l;bi+=gram_tile_size)
+			for(int bj=bi;bj<l;bj+=gram_tile_size)
+			{
+				final int i_start = bi, j_start = bj;
+				tiles.add(new RecursiveAction() {
+					private static final long serialVersionUID = 1L;
+					protected void compute()
+					{
+						int i_end = Math.min(i_start+gram_tile_size, l);
+						int j_end = Math.min(j_start+gram_tile_size, l);
+						for(int j=j_start;j<j_end;j++)
+							for(int i=i_start;i<i_end && i<=j;i++)
+								gram.put(i, j, (float)kernel.kernel_function(i,j));
+					}
+				});
+			}
+
+		ForkJoinPool pool = Kernel.get_pool(param.nr_threads);
+		if(pool == null)
+			for(RecursiveAction tile : tiles)
+				tile.invoke();
+		else
+			pool.invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				protected void compute()
+				{
+					invokeAll(tiles);
+				}
+			});
+	}
+
 	//
 	// construct and solve various formulations
 	//
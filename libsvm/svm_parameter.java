@@ -19,6 +19,14 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public static final int RBF = 2;
 	public static final int SIGMOID = 3;
 	public static final int PRECOMPUTED = 4;
+
+	/* cache_type */
+	public static final int HEAP_CACHE = 0;
+	public static final int OFFHEAP_CACHE = 1;
+
+	/* cache_policy (for OFFHEAP_CACHE) */
+	public static final int LRU = 0;
+	public static final int LFU = 1;
 	
 
 	public int svm_type;
@@ -29,6 +37,8 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 
 	// these are for training only
 	public double cache_size; // in MB
+	public int cache_type;	// HEAP_CACHE or OFFHEAP_CACHE
+	public int cache_policy;	// eviction of OFFHEAP_CACHE: LRU or LFU
 	public double eps;	// stopping criteria
 	public double C;	// for C_SVC, EPSILON_SVR and NU_SVR
 	public int nr_weight;		// for C_SVC
@@ -43,6 +53,8 @@ public class svm_parameter implements Cloneable,java.io.Serializable
 	public FeatureRepresentation fr;
 	public boolean useExpectedValues;
 	//End SIGMOD_axi
+	public int nr_threads;	// threads computing kernel columns (serial if <= 1)
+	public GramMatrix gram;	// precomputed kernel values of the training rows (null if none)
 
 	public Object clone() 
 	{
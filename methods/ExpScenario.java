@@ -6,6 +6,7 @@ import java.util.LinkedList;
 import libsvm.mySvmUtil;
 import libsvm.svm;
 import libsvm.svm_model;
+import libsvm.GramMatrix;
 import libsvm.svm_parameter;
 import libsvm.svm_problem;
 import anonymizer.Anonymizer;
@@ -142,6 +143,7 @@ public class ExpScenario {
 		
 		String data, test;
 		double avg_acc = 0;			
+		GramMatrix gram = null; //kernel matrix of the training data, shared by all folds
 		for(int fold = 1; fold <= crossVal; fold++) {
 			if(testScenario.compareTo("00")==0){
 				data = test = "orig";
@@ -164,7 +166,9 @@ public class ExpScenario {
 			param.gamma = 0;	// 1/k
 			param.coef0 = 0;
 			param.nu = 0.5;
-			param.cache_size = 100;
+			param.cache_size = p.cacheSize;
+			param.cache_type = p.useOffHeapCache ? svm_parameter.OFFHEAP_CACHE : svm_parameter.HEAP_CACHE;
+			param.cache_policy = p.cachePolicy;
 			param.C = 1;
 			param.eps = 1e-3;
 			param.p = 0.1;
@@ -176,8 +180,20 @@ public class ExpScenario {
 			param.fr = fr;
 			param.useExpectedValues = (p.useUniformExpected || p.usePDFExpected);
 			param.kernel_type = p.kernelType; 
+			param.nr_threads = Runtime.getRuntime().availableProcessors();
+			if(p.useGramMatrix) {
+				if(gram == null) {
+					gram = mySvmUtil.computeGramMatrix(data.equals("anon") ? "featAnon.rawdata" : "featOrig.rawdata", param);
+				}
+				param.gram = gram;
+			}
 			svm_problem prob = mySvmUtil.readProblem(data+fold+".data", param);
+			svm.reset_cache_stats();
 			svm_model model = svm.svm_train(prob, param);
+			if(p.useOffHeapCache) {
+				long[] stats = svm.get_cache_stats();
+				System.out.println("Kernel cache hits: " + stats[0] + ", misses: " + stats[1]);
+			}
 			double acc = mySvmUtil.predict(test+fold+".test", model);
 			avg_acc += acc;
 		}
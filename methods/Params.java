@@ -20,11 +20,18 @@ public class Params {
 	public static final int Ker_SIGMOID = 3;
 	public static final int Ker_PRECOMPUTED = 4;
 	
+	public static final int Cache_LRU = 0;
+	public static final int Cache_LFU = 1;
+	
 	public boolean usePDFExpected; //true or false
 	public boolean useUniformExpected; //true or false
 	public int numericRepOption;
 	public int categoricalRepOption;
 	public int kernelType;
+	public boolean useGramMatrix; //true or false, precompute the kernel matrix of the training data
+	public double cacheSize; //kernel cache size in MB
+	public boolean useOffHeapCache; //true or false, keep the kernel cache outside the heap
+	public int cachePolicy; //eviction of the off-heap cache
 
 	public Params(String[] args) throws Exception{
 		this.args = args;
@@ -35,6 +42,10 @@ public class Params {
 		numericRepOption = Num_PDF;
 		categoricalRepOption = Cat_PDF;
 		kernelType = Ker_RBF;
+		useGramMatrix = false;
+		cacheSize = 100;
+		useOffHeapCache = false;
+		cachePolicy = Cache_LRU;
 		
 		String value;
 		if((value = isSet("-uni"))!=null) {
@@ -57,6 +68,18 @@ public class Params {
 		if((value = isSet("-kernel"))!= null) {
 			kernelType = Integer.parseInt(value);
 		}
+		if((value = isSet("-gram"))!= null) {
+			useGramMatrix = Boolean.parseBoolean(value);
+		}
+		if((value = isSet("-cacheSize"))!= null) {
+			cacheSize = Double.parseDouble(value);
+		}
+		if((value = isSet("-offHeapCache"))!= null) {
+			useOffHeapCache = Boolean.parseBoolean(value);
+		}
+		if((value = isSet("-cachePolicy"))!= null) {
+			cachePolicy = Integer.parseInt(value);
+		}
 		
 		checkParameterValiditiy();
 	}
@@ -86,6 +109,16 @@ public class Params {
 		if(kernelType < Ker_LINEAR || kernelType > Ker_PRECOMPUTED) {
 			throw new Exception("Invalid kernel type!");
 		}
+		if(cacheSize <= 0) {
+			throw new Exception("Invalid cache size!");
+		}
+		if(cachePolicy < Cache_LRU || cachePolicy > Cache_LFU) {
+			throw new Exception("Invalid cache policy!");
+		}
+		if(useGramMatrix && kernelType == Ker_PRECOMPUTED) {
+			System.out.println("WARNING: The kernel is already precomputed! Resetting gram to false!");
+			useGramMatrix = false;
+		}
 	}
 	
 	private String isSet(String optionKey) {
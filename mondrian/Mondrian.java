@@ -1,14 +1,19 @@
 package mondrian;
 
-import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.ListIterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import sqlwrapper.QueryResult;
 import sqlwrapper.SqLiteSQLWrapper;
 import anonymizer.AnonRecordTable;
 import anonymizer.Anonymizer;
 import anonymizer.Configuration;
 import anonymizer.EquivalenceTable;
 import anonymizer.Interval;
+import anonymizer.MemAnonRecordTable;
+import anonymizer.MemEquivalenceTable;
 
 /**
  * Implementation of the Mondrian multi-dimensional partitioning algorithm for 
@@ -31,11 +36,122 @@ import anonymizer.Interval;
  * <p/>
  * Given dimension, partitions are built by splitting the domain on the median value. If med
  * represents the median, LHS contains all values &lt= med and RHS contains all values &gt med.
+ * <p/>
+ * Partitioning is performed in main memory over primitive arrays of qi-attribute values (the
+ * records of a partition are a range of an index array, which is reordered in place at each 
+ * split). Medians are found by quickselect. Since partitions are independent, they are split
+ * in parallel on a fork/join pool (see Configuration.numThreads). Equivalences and their 
+ * records are written to the tables only once, after all partitions are final, with EIDs 
+ * assigned in breadth-first order so that the output does not depend on the number of threads.
+ * <p/>
+ * The records and the partition tree are kept between runs of anonymize() (e.g., when k is 
+ * changed through changeKAnonymityRequirement()). Medians and split sizes of a partition do 
+ * not depend on k, so a later run only recomputes the cut of each partition and re-splits 
+ * the partitions whose dimension of choice has changed; other subtrees are reused.
  */
 public class Mondrian extends Anonymizer{
+	/** Partitions smaller than this are not split in parallel*/
+	private static final int SEQUENTIAL_CUTOFF = 10000;
+	
 	/** Generalized values for the suppression equivalence*/
 	private String[] suppEq;
 	
+	/** IDs of the records being partitioned, in ascending order*/
+	private long[] rids;
+	/** Qi-attribute values of the records being partitioned (one array per qi-attribute)*/
+	private double[][] vals;
+	/** Positions of the records within rids and vals, each partition owns a range of it*/
+	private int[] order;
+	/** Width of the suppression value of each qi-attribute (i.e., the entire domain)*/
+	private double[] suppWidths;
+	/** Partition of all records (kept, with its sub-partitions, for later runs)*/
+	private Partition root = null;
+	
+	/**
+	 * A partition of the records, i.e., an equivalence that is not written to eqTable yet
+	 */
+	private static class Partition {
+		/** Equivalence ID*/
+		long eid;
+		/** First position of the partition within order*/
+		int from;
+		/** Position after the last position of the partition within order*/
+		int to;
+		/** Generalized values of the partition (converted to strings only for the output)*/
+		Interval[] ranges;
+		/** Median of each dimension (null until computed, these do not depend on k)*/
+		double[] medians = null;
+		/** Number of records that are less than or equal to the median, for each dimension*/
+		int[] lhsSizes = null;
+		/** Dimension of the last split (-1 if never split)*/
+		int splitDim = -1;
+		/** true if the partition is split in the current run*/
+		boolean isSplit = false;
+		/** Sub-partitions of the last split (null if never split)*/
+		Partition lhs, rhs;
+		
+		Partition(long eid, int from, int to, Interval[] ranges) {
+			this.eid = eid;
+			this.from = from;
+			this.to = to;
+			this.ranges = ranges;
+		}
+		
+		int size() {
+			return to - from;
+		}
+		
+		String[] getGenVals() {
+			String[] genVals = new String[ranges.length];
+			for(int i = 0; i < genVals.length; i++) {
+				genVals[i] = ranges[i].toString();
+			}
+			return genVals;
+		}
+	}
+	
+	/**
+	 * Splits a partition, then its sub-partitions in parallel. Partitions smaller than
+	 * SEQUENTIAL_CUTOFF are split within the same task.
+	 */
+	private class SplitTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		/** Partition to be split*/
+		private Partition p;
+		
+		SplitTask(Partition p) {
+			this.p = p;
+		}
+		
+		protected void compute() {
+			boolean isSplit = false;
+			try {
+				if(p.size() < SEQUENTIAL_CUTOFF) {
+					partitionAll(p);
+					return;
+				}
+				isSplit = partition(p);
+			} catch(Exception e) {
+				throw new SplitException(e);
+			}
+			if(isSplit) {
+				invokeAll(new SplitTask(p.lhs), new SplitTask(p.rhs));
+			}
+		}
+	}
+	
+	/**
+	 * Unchecked wrapper of the exceptions thrown while splitting partitions in a SplitTask
+	 */
+	private static class SplitException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		public SplitException(Throwable cause) {
+			super(cause);
+		}
+	}
+	
 	/**
 	 * Class constructor
 	 * @param conf Configuration instance
@@ -53,7 +169,9 @@ public class Mondrian extends Anonymizer{
 			suppEq[i] = conf.qidAtts[i].getSup();
 		}
 		
-		sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		if(conf.storage == Configuration.STORAGE_SQLITE) {
+			sqlwrapper = SqLiteSQLWrapper.getInstance(); //check DB connectivity
+		}
 
 		//create tables
 		eqTable = createEquivalenceTable("eq_init"); 
@@ -81,6 +199,9 @@ public class Mondrian extends Anonymizer{
 		for(int i = 0; i < qiAtts.length; i++) {
 			qiAtts[i] = conf.qidAtts[i].index;
 		}
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemAnonRecordTable(qiAtts, new Integer[0], tableName);
+		}
 		return new AnonRecordTable(qiAtts, new Integer[0], tableName);
 	}
 
@@ -90,16 +211,19 @@ public class Mondrian extends Anonymizer{
 	 * @return A new equivalence table
 	 */
 	protected EquivalenceTable createEquivalenceTable(String tableName) {
+		if(conf.storage == Configuration.STORAGE_MEMORY) {
+			return new MemEquivalenceTable(conf.qidAtts, tableName);
+		}
 		return new EquivalenceTable(conf.qidAtts, tableName);
 	}
 
 	/**
 	 * Insert a tuple to the equivalence table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
+	 * @param qiVals Encoded qi-attribute values of the tuple (as read from the source, i.e., before any generalization)
 	 * @return Equivalence id of the equivalence to which the tuple belongs
 	 * @throws Exception
 	 */
-	protected long insertTupleToEquivalenceTable(String[] vals) throws Exception{
+	protected long insertTupleToEquivalenceTable(double[] qiVals) throws Exception{
 		//check if an equivalence matching suppEq already exists
 		Long eid = eqTable.getEID(suppEq); 
 		if(eid.compareTo(new Long(-1)) == 0) { //if not, insert new equivalence
@@ -108,122 +232,148 @@ public class Mondrian extends Anonymizer{
 		return eid;
 	}
 
-	/**
-	 * Insert a tuple to the anonRecords table
-	 * @param vals All values of the tuple to be inserted (as read from the source, i.e., before any generalization)
-	 * @param eid Equivalence id of the equivalence to which the tuple belongs
-	 * @throws Exception
-	 */
-	protected void insertTupleToAnonTable(String[] vals, long eid) throws Exception{
-		//parse qi-attribute values
-		double[] qiVals = new double[conf.qidAtts.length];
-		for(int i = 0; i < conf.qidAtts.length; i++) {
-			String attVal = vals[conf.qidAtts[i].index];
-			if(conf.qidAtts[i].catDomMapping != null) {
-				qiVals[i] = conf.qidAtts[i].catDomMapping.get(attVal);
-			} else {
-				qiVals[i] = Double.parseDouble(attVal);
-			}
-		}
-		anonTable.insert(eid, qiVals, new double[0]);
+	@Override
+	protected boolean isReusable() {
+		return true;
 	}
-
+	
 	/**
-	 * Anonymizes the input. This function can be reused (with new k maybe), as long as 
-	 * eqTable and anonTable objects are fresh and the configuration has 
-	 * not changed.
+	 * Anonymizes the input. This function can be reused (with new k maybe) without reading 
+	 * the input again, as long as the configuration has not changed otherwise. Tables of the
+	 * previous run are dropped.
 	 * @throws Exception
 	 */
 	public void anonymize() throws Exception {
-		AnonRecordTable readyRecords = createAnonRecordsTable("an_ready");
-		EquivalenceTable readyEqs = createEquivalenceTable("eq_ready");
+		if(root == null) { //first run
+			loadRecords();
+		}
 		
-		int numUnprocessedEqs = 1; //initially, eqTable contains the suppression equivalence
-		while(numUnprocessedEqs > 0) { //while there are more tables to be processed
-			String getEID_SQL = "SELECT EID FROM " + eqTable.getName();
-			long eid = ((ResultSet) sqlwrapper.executeQuery(getEID_SQL).next()).getLong(1);
-			
-			//get generalized values for the equivalence
-			String[] genVals = eqTable.getGeneralization(eid);
-			String genConcat = "[[" + genVals[0] + "]";
-			for(int i = 1; i < genVals.length; i++) {
-				genConcat += ",[" + genVals[i] + "]";
-			}
-			System.out.println("Processing EID = " + eid + ", " + genConcat + "]");
-			
-			//choose partitioning dimension and the split value
-			int dim = -1;
-			double splitVal = Double.NaN;
-			double maxNormalizedWidth = 0;
-			Double[] medians = new Double[conf.qidAtts.length];
-			for(int i = 0; i < conf.qidAtts.length; i++) {
-				medians[i] = getMedian(eid, conf.qidAtts[i].index);
-				if(medians[i] != null) {
-					double normWidth = getNormalizedWidth(genVals[i], suppEq[i]);
-					if(normWidth > maxNormalizedWidth) {
-						maxNormalizedWidth = normWidth;
-						dim = i;
-						splitVal = medians[dim];
-					}
+		//split partitions until no allowable cuts remain (concurrently, if possible)
+		if(conf.numThreads > 1) {
+			ForkJoinPool pool = new ForkJoinPool(conf.numThreads);
+			try {
+				pool.invoke(new SplitTask(root));
+			} catch(SplitException e) {
+				//ForkJoin may wrap the exception of the worker once more
+				Throwable cause = e;
+				while(cause instanceof SplitException) {
+					cause = cause.getCause();
 				}
+				if(cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			} finally {
+				pool.shutdown();
+			}
+		} else {
+			partitionAll(root);
+		}
+		
+		//assign EIDs in breadth-first order (i.e., the order of a serial run), so that the
+		// output does not depend on the scheduling of the splits
+		LinkedList<Partition> unprocessed = new LinkedList<Partition>();
+		LinkedList<Partition> ready = new LinkedList<Partition>();
+		unprocessed.add(root);
+		long maxEID = root.eid; //new EIDs are assigned in the order of creation
+		while(!unprocessed.isEmpty()) {
+			Partition p = unprocessed.removeFirst();
+			String genConcat = "[[" + p.ranges[0] + "]";
+			for(int i = 1; i < p.ranges.length; i++) {
+				genConcat += ",[" + p.ranges[i] + "]";
 			}
+			System.out.println("Processing EID = " + p.eid + ", " + genConcat + "]");
 			
-			//split on the median of dim
-			if(dim != -1) { //if there exists allowable cut
-				Interval rangeOrig = new Interval(genVals[dim]);
-				Interval[] newRanges = rangeOrig.splitInclusive(splitVal);
-				
-				//create equivalence for LHS
-				String[] genValsLHS = genVals.clone();
-				genValsLHS[dim] = newRanges[0].toString(); //update the value on dim
-				long lhsEID = eqTable.insertEquivalence(genValsLHS); //insert into eqTable (to be processed later)
-				updateEIDs(eid, lhsEID, newRanges[0], conf.qidAtts[dim].index); //update EIDs on anonTable
-				
-				String[] genValsRHS = genVals;
-				genValsRHS[dim] = newRanges[1].toString(); //update the value on dim
-				long rhsEID = eqTable.insertEquivalence(genValsRHS); //insert into eqTable (to be processed later)
-				updateEIDs(eid, rhsEID, newRanges[1], conf.qidAtts[dim].index); //update EIDs on anonTable
-				
-				//remove existing EID from eqTable
-				eqTable.deleteEquivalence(eid);
-				
-				//update for the while condition 
-				numUnprocessedEqs += 1;
-				System.out.println("\tInserted " + lhsEID + " (left) and " + rhsEID + " (right)");
-			} else { //move this eq to readyEqs
-				long newEid = readyEqs.insertEquivalence(genVals);
-				readyRecords.cutFrom(anonTable, eid, newEid);
-				eqTable.deleteEquivalence(eid);
-				
-				//update for the while condition
-				numUnprocessedEqs --;
-				System.out.println("\tRemoving " + eid + " (no allowable cuts)");
+			if(p.isSplit) { //split, children will be processed later
+				p.lhs.eid = ++maxEID;
+				p.rhs.eid = ++maxEID;
+				unprocessed.add(p.lhs);
+				unprocessed.add(p.rhs);
+				System.out.println("\tInserted " + p.lhs.eid + " (left) and " + p.rhs.eid + " (right)");
+			} else { //this partition is an equivalence
+				ready.add(p);
+				System.out.println("\tRemoving " + p.eid + " (no allowable cuts)");
 			}
 		}
 		
-		if(!readyRecords.checkKAnonymityRequirement(conf.k)) {
-			throw new Exception("This table cannot be anonymized at k = " + conf.k);
+		ListIterator<Partition> iter = ready.listIterator();
+		while(iter.hasNext()) {
+			int size = iter.next().size();
+			if(size > 0 && size < conf.k) {
+				throw new Exception("This table cannot be anonymized at k = " + conf.k);
+			}
 		}
 		
+		//drop the tables of the initial load (or of the previous run)
 		anonTable.drop();
 		eqTable.drop();
+		
+		//write the equivalences and their records (in ascending order of RIDs)
+		AnonRecordTable readyRecords = createAnonRecordsTable("an_ready");
+		EquivalenceTable readyEqs = createEquivalenceTable("eq_ready");
+		readyRecords.beginBulkInsert(conf.batchSize);
+		double[] qiVals = new double[conf.qidAtts.length];
+		iter = ready.listIterator();
+		while(iter.hasNext()) {
+			Partition p = iter.next();
+			long eid = readyEqs.insertEquivalence(p.getGenVals());
+			//sort a copy, order is kept for the sub-partitions of later runs
+			int[] positions = Arrays.copyOfRange(order, p.from, p.to);
+			Arrays.sort(positions);
+			for(int j = 0; j < positions.length; j++) {
+				for(int i = 0; i < qiVals.length; i++) {
+					qiVals[i] = vals[i][positions[j]];
+				}
+				readyRecords.insert(rids[positions[j]], eid, qiVals, new double[0]);
+			}
+		}
+		readyRecords.endBulkInsert();
+		
 		anonTable = readyRecords;
 		eqTable = readyEqs;
 	}
 	
+	/**
+	 * Loads the records of the suppression equivalence (i.e., all records) into the arrays
+	 * and creates the root partition
+	 * @throws Exception
+	 */
+	private void loadRecords() throws Exception {
+		long initEID = eqTable.peekEID();
+		double[][] records = anonTable.getEquivalenceRecords(initEID);
+		rids = new long[records.length];
+		vals = new double[conf.qidAtts.length][records.length];
+		order = new int[records.length];
+		for(int r = 0; r < records.length; r++) {
+			rids[r] = (long) records[r][0];
+			for(int i = 0; i < conf.qidAtts.length; i++) {
+				vals[i][r] = records[r][i+1];
+			}
+			order[r] = r;
+		}
+		records = null;
+		
+		//parse the generalization of the suppression equivalence and the domain widths once
+		String[] initGenVals = eqTable.getGeneralization(initEID);
+		Interval[] initRanges = new Interval[initGenVals.length];
+		suppWidths = new double[initGenVals.length];
+		for(int i = 0; i < initRanges.length; i++) {
+			initRanges[i] = new Interval(initGenVals[i]);
+			Interval supRange = new Interval(suppEq[i]);
+			suppWidths[i] = supRange.high - supRange.low;
+		}
+		
+		root = new Partition(initEID, 0, order.length, initRanges);
+	}
+	
 	/**
 	 * Calculates the normalized width of a generalized value, based on the suppression value
-	 * @param gen String representation of the generalization interval
-	 * @param sup String representation of the suppresion interval (i.e., the entire domain)
+	 * @param genRange Generalization interval
+	 * @param supWidth Width of the suppresion interval (i.e., the entire domain)
 	 * @return normalized width of the generalization (genWidth / supWidth)
-	 * @throws Exception
 	 */
-	private double getNormalizedWidth(String gen, String sup) throws Exception{
-		//calculate the domain width
-		Interval supRange = new Interval(sup);
-		double supWidth = supRange.high - supRange.low;
+	private double getNormalizedWidth(Interval genRange, double supWidth) {
 		//calculate the generalization width
-		Interval genRange = new Interval(gen);
 		double genWidth = genRange.high - genRange.low;
 		if(genWidth == 0 && genRange.isSingleton()) { //special case: gen = [1]
 			genWidth = 1;
@@ -233,57 +383,167 @@ public class Mondrian extends Anonymizer{
 	}
 	
 	/**
-	 * Updates the EIDs of equivalences with EID = oldEID to newEID
-	 * if the predicate indicated by the interval is satisfied on the qi-attribute
-	 * at the specified index
-	 * @param oldEID ID of the equivalence being split
-	 * @param newEID New ID assigned to those records matching the range
-	 * @param range The interval that specifies the new range on newEID for attribute at index
-	 * @param index Index of the partitioning dimension
+	 * Splits a partition and its sub-partitions until no allowable cuts remain
+	 * @param root A partition
+	 * @throws Exception
 	 */
-	private void updateEIDs(long oldEID, long newEID, Interval range, int index) {
-		String update_SQL = "UPDATE " + anonTable.getName() 
-			+ " SET EID = " + newEID 
-			+ " WHERE EID = " + oldEID + " AND " + range.getPredicate("ATT_" + index);
-		sqlwrapper.execute(update_SQL);
+	private void partitionAll(Partition root) throws Exception {
+		LinkedList<Partition> stack = new LinkedList<Partition>();
+		stack.add(root);
+		while(!stack.isEmpty()) {
+			Partition p = stack.removeLast();
+			if(partition(p)) {
+				stack.add(p.rhs);
+				stack.add(p.lhs);
+			}
+		}
 	}
 	
 	/**
-	 * Computes the median value on attribute indexed att for equivalence with ID eid
-	 * @param eid Equivalence ID
-	 * @param att An attribute index
-	 * @return the median value
+	 * Splits a partition on the median of the dimension with the widest normalized range.
+	 * Partitions own disjoint ranges of order, therefore different partitions can be 
+	 * split concurrently. If the partition was split on the same dimension by a previous 
+	 * run, the sub-partitions of that run are reused.
+	 * @param p A partition
+	 * @return true if p is split (p.lhs and p.rhs are set), false if there are no allowable cuts
+	 * @throws Exception
 	 */
-	public Double getMedian(long eid, int att) throws Exception{
-		//size of the equivalence
-		double totalSize = anonTable.getEquivalenceSize(eid); 
+	private boolean partition(Partition p) throws Exception {
+		if(p.medians == null) {
+			computeMedians(p);
+		}
+		//choose partitioning dimension among the allowable cuts
+		Interval[] ranges = p.ranges;
+		int dim = -1;
+		double maxNormalizedWidth = 0;
+		for(int i = 0; i < conf.qidAtts.length; i++) {
+			//check whether the cut on the median is allowable
+			if(p.lhsSizes[i] >= conf.k && (p.size() - p.lhsSizes[i]) >= conf.k) {
+				double normWidth = getNormalizedWidth(ranges[i], suppWidths[i]);
+				if(normWidth > maxNormalizedWidth) {
+					maxNormalizedWidth = normWidth;
+					dim = i;
+				}
+			}
+		}
+		if(dim == -1) { //no allowable cuts
+			p.isSplit = false;
+			return false;
+		}
+		p.isSplit = true;
+		if(dim == p.splitDim) { //sub-partitions of a previous run are still valid
+			return true;
+		}
 		
-		//iterate over all values of the attribute
-		String iterVals_SQL = "SELECT ATT_" + att + ", COUNT(*)"
-			+ " FROM " + anonTable.getName()
-			+ " WHERE EID = " + eid
-			+ " GROUP BY ATT_" + att 
-			+ " ORDER BY ATT_" + att;
-		QueryResult result = sqlwrapper.executeQuery(iterVals_SQL);
+		//split on the median of dim
+		p.splitDim = dim;
+		Interval[] newRanges = ranges[dim].splitInclusive(p.medians[dim]);
+		int splitPos = split(p, dim, newRanges[0]); //records of LHS are moved to the front
 		
-		int currSize = 0;
-		Double median = null;
-		while(result.hasNext()) {
-			ResultSet rs = (ResultSet) result.next();
-			currSize += rs.getInt(2); //increment current size by the count
-			
-			//found median
-			if(currSize >= totalSize / 2) {
-				//set the last value as the median
-				median = rs.getDouble(1);
-				break;
+		//create partition for LHS
+		Interval[] rangesLHS = ranges.clone();
+		rangesLHS[dim] = newRanges[0]; //update the value on dim
+		p.lhs = new Partition(-1, p.from, splitPos, rangesLHS);
+		
+		//create partition for RHS
+		Interval[] rangesRHS = ranges.clone();
+		rangesRHS[dim] = newRanges[1]; //update the value on dim
+		p.rhs = new Partition(-1, splitPos, p.to, rangesRHS);
+		return true;
+	}
+	
+	/**
+	 * Moves the records of a partition that fall into the range on dimension dim to the
+	 * front of the partition
+	 * @param p A partition
+	 * @param dim Index of the partitioning dimension within qi-attributes
+	 * @param range Range of the LHS on dim
+	 * @return Position of the first record that is not in the range
+	 */
+	private int split(Partition p, int dim, Interval range) {
+		int i = p.from;
+		int j = p.to - 1;
+		while(i <= j) {
+			if(range.compareTo(vals[dim][order[i]])) {
+				i++;
+			} else {
+				int temp = order[i];
+				order[i] = order[j];
+				order[j] = temp;
+				j--;
 			}
 		}
-		//check whether this cut is allowable
-		if(currSize >= conf.k && (totalSize - currSize) >= conf.k) {
-			return median;
-		} else {
-			return null;
+		return i;
+	}
+	
+	/**
+	 * Computes the median value on each dimension for the records of a partition, and the 
+	 * number of records on the LHS of the cut on each median (sets p.medians and p.lhsSizes)
+	 * @param p A partition
+	 */
+	private void computeMedians(Partition p) {
+		//size of the partition
+		int totalSize = p.size();
+		double[] medians = new double[conf.qidAtts.length];
+		int[] lhsSizes = new int[conf.qidAtts.length];
+		double[] column = new double[totalSize];
+		for(int dim = 0; dim < medians.length && totalSize > 0; dim++) {
+			for(int j = 0; j < totalSize; j++) {
+				column[j] = vals[dim][order[p.from + j]];
+			}
+			//the smallest value with at least half of the values less than or equal to it
+			double median = select(column, (totalSize + 1) / 2 - 1);
+			int currSize = 0;
+			for(int j = 0; j < totalSize; j++) {
+				if(column[j] <= median) {
+					currSize++;
+				}
+			}
+			medians[dim] = median;
+			lhsSizes[dim] = currSize;
+		}
+		p.medians = medians;
+		p.lhsSizes = lhsSizes;
+	}
+	
+	/**
+	 * Finds the value with the specified rank (quickselect, in linear expected time)
+	 * @param values Values to be searched, will be reordered
+	 * @param rank Rank of the value (0 for the smallest)
+	 * @return Value that would be at index rank if values were sorted
+	 */
+	private static double select(double[] values, int rank) {
+		int left = 0;
+		int right = values.length - 1;
+		while(left < right) {
+			//partition around the middle value
+			double pivot = values[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while(i <= j) {
+				while(values[i] < pivot) {
+					i++;
+				}
+				while(values[j] > pivot) {
+					j--;
+				}
+				if(i <= j) {
+					double temp = values[i];
+					values[i] = values[j];
+					values[j] = temp;
+					i++;
+					j--;
+				}
+			}
+			//continue with the side that contains rank
+			if(rank <= j) {
+				right = j;
+			} else if(rank >= i) {
+				left = i;
+			} else {
+				return values[rank];
+			}
 		}
+		return values[rank];
 	}
 }
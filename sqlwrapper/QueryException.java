@@ -0,0 +1,30 @@
+package sqlwrapper;
+
+import java.sql.SQLException;
+
+/**
+ * Unchecked wrapper of the SQLExceptions thrown while iterating a QueryResult 
+ * (Iterator methods cannot throw checked exceptions).
+ */
+
+public class QueryException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Class constructor
+	 * @param cause SQLException thrown by the database
+	 */
+	
+	public QueryException(SQLException cause) {
+		super(cause);
+	}
+	
+	/**
+	 * Returns the SQLException thrown by the database
+	 * @return cause
+	 */
+	
+	public SQLException getCause() {
+		return (SQLException) super.getCause();
+	}
+}
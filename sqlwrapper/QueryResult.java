@@ -1,153 +1,160 @@
 package sqlwrapper;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Iterator;
 
 /**
- * Implementation of the query ResultSet that supports pageable query for handling 
+ * Implementation of the query ResultSet that supports streamed query for handling 
  * large data sets that does not fit into the memory.
+ * <p/>
+ * By default, the query is executed only once and a single forward-only ResultSet is 
+ * iterated. The fetch size passed to the driver is only a hint, a driver may still
+ * load the whole result into the memory.
+ * <p/>
+ * In keyset mode, the query is executed in pages of at most pageSize rows in ascending 
+ * order of a unique key column, each page starting after the last key of the previous 
+ * page. Only one page is held at a time, whatever the driver does with the fetch size.
  */
 
 public class QueryResult implements Iterator{
 
-	private String query;
 	private Statement stat;
 	
-	private int currentRecordInd = 0;
-	private int currentPageInd = 0;
-	private ArrayList currentRecord = new ArrayList();
-	private int recordCount;
-	private int numCols=0;
-	private int pageSize = 10000;
-	private int numberOfPages;
-	private boolean pageLoaded = false; 
-	
 	private ResultSet currentPage;
 	
+	/** query of the keyset mode (null if the query is executed once)*/
+	private String sql = null;
+	/** unique key column the pages are ordered on*/
+	private String key;
+	/** maximum number of rows in a page*/
+	private int pageSize;
+	/** key of the last row returned*/
+	private long lastKey = Long.MIN_VALUE;
+	/** number of rows read from the current page*/
+	private int pageRows = 0;
+	
+	private boolean hasRow = false;
+	private boolean advance = true;
+	
 	/**
 	 * Class constructor
 	 * @param stat Statement object for executing sql query
 	 * @param sql SQL query
+	 * @param fetchSize number of rows fetched from the database at a time
 	 */
 	
-	public QueryResult(Statement stat, String sql) throws SQLException{
+	public QueryResult(Statement stat, String sql, int fetchSize) throws SQLException{
 		
-		this.query = sql;
 		this.stat = stat;
 		
-		ResultSet rs = stat.executeQuery("select count(*) as recordCount from ( " + sql + " ) as temp");
+		stat.setFetchSize(fetchSize);
+		currentPage = stat.executeQuery(sql);
+	}
+	
+	/**
+	 * Class constructor for the keyset mode
+	 * @param stat Statement object for executing sql query
+	 * @param sql SQL query without ORDER BY and LIMIT clauses
+	 * @param key Integer column of the query with unique values (e.g., RID)
+	 * @param pageSize maximum number of rows in a page
+	 */
+	
+	public QueryResult(Statement stat, String sql, String key, int pageSize) throws SQLException{
 		
-		if(rs.next())
-			recordCount = rs.getInt(1);
+		this.stat = stat;
+		this.sql = sql;
+		this.key = key;
+		this.pageSize = pageSize;
 		
-		numberOfPages = recordCount/ pageSize;
+		stat.setFetchSize(pageSize);
+		executePage();
 	}
 	
+	/**
+	 * Executes the query for the page that starts after the last key returned 
+	 */
+	
+	private void executePage() throws SQLException{
+		if(currentPage != null)
+			currentPage.close();
+		pageRows = 0;
+		currentPage = stat.executeQuery("SELECT * FROM (" + sql + ")" +
+				" WHERE " + key + " > " + lastKey +
+				" ORDER BY " + key + " LIMIT " + pageSize);
+	}
 	
 	/**
 	 * Returns false if resutSet pointer reaches the end of the set, returns true otherwise.
 	 * @return success
+	 * @throws QueryException if the next row cannot be read from the database
 	 */
 	
 	public boolean hasNext() {
-		
-		if(currentRecordInd >= recordCount) {
-			try {
-				stat.close();
-				
-				if(currentPage != null)
-					currentPage.close();
-			} catch(SQLException e) { e.printStackTrace(); }
-			return false;
-		}		
-		return true;
+		moveCursor();
+		return hasRow;
 	}
 
 	
 	/**
-	 * Extract the next data from the resultSet. If the end of the currentPage 
-	 * is reached, next page is retrieved from disk to memory.
+	 * Extract the next data from the resultSet.
 	 * 
 	 * @return next tuple from the resultSet
+	 * @throws QueryException if the next row cannot be read from the database
 	 */
 	
 	public Object next() {
-		currentRecord.clear();
-		try {
-			if (currentPage == null || !currentPage.next()) 
-				nextPage();
-		} catch (SQLException e1) {	e1.printStackTrace();}
-		    
-		if (currentPage != null) {
-			if (pageLoaded) {
-				try {
-					currentPage.next();
-				} catch (SQLException e) {
-					e.printStackTrace();
-				}
-				pageLoaded = false; 
-			}
-
-			currentRecordInd++;
+		moveCursor();
+		advance = true; //cursor stays on the returned row until the next call
+		if(hasRow) {
 			return currentPage;
 		}
-		return  null;
+		return null;
 	} 
-	
+
 	/**
-	 * Next page is retrieved from disk to memory
+	 * Moves the cursor of the streamed ResultSet to the next row (if not moved yet), 
+	 * and releases the statement once all rows are consumed
 	 */
 	
-	public void nextPage() throws SQLException {
-	         
-		int startIndex;
-		int endIndex;
-		
-	        if(currentPageInd <= numberOfPages) {
-	        	
-	        	startIndex = currentPageInd*pageSize ;
-	        	
-	        	endIndex = startIndex + pageSize;
-	        	
-	        	if (endIndex > recordCount+1)
-	        		endIndex = recordCount +1 ; 
-	        		
-	        		String pageQuery;
-	        		if(query.toLowerCase().contains(" limit 1 offset ")) {
-	        			pageQuery = query;
-	        		} else {
-	        			pageQuery = query + " limit " + (endIndex- startIndex)+ " offset " +  startIndex;
-	        		}
-	        		
-	        		currentPage = stat.executeQuery(pageQuery);
-	        		
-	        		if (numCols == 0) {
-	        			ResultSetMetaData rsmd = currentPage.getMetaData();
-	        			numCols = rsmd.getColumnCount();
-	        		}
-	        	           		
-	        	currentPageInd++;
-	        	pageLoaded = true;
-	        	
-	        }else
-	        	currentPage = null; 
+	private void moveCursor() {
+		if(!advance) {
+			return;
+		}
+		advance = false;
+		try {
+			hasRow = currentPage != null && currentPage.next();
+			if(!hasRow && sql != null && pageRows == pageSize) { //a full page, continue with the next one
+				executePage();
+				hasRow = currentPage.next();
+			}
+			if(!hasRow) {
+				close();
+			} else if(sql != null) {
+				pageRows++;
+				lastKey = currentPage.getLong(key);
+			}
+		} catch (SQLException e) { //a failed scan must not look like the end of the rows
+			hasRow = false;
+			close();
+			throw new QueryException(e);
+		}
 	}
 	
 	/**
-	 * Set the maximum number of tuples that resides in a page 
-	 * @param pageSize number of tuples 
+	 * Releases the statement and the ResultSet (open statements lock the tables they read)
 	 */
 	
-	public void setPageSize(int pageSize){
-		this.pageSize = pageSize;
+	public void close() {
+		try {
+			if(currentPage != null)
+				currentPage.close();
+			stat.close();
+		} catch(SQLException e) { e.printStackTrace(); }
+		currentPage = null;
 	}
-
-
+	
 	public void remove() {		
 	}		
 }
-
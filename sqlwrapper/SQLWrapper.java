@@ -1,5 +1,7 @@
 package sqlwrapper;
 
+import java.sql.PreparedStatement;
+
 /**
  * Interface for embedded database operations.
  * 
@@ -8,6 +10,9 @@ package sqlwrapper;
 public interface SQLWrapper {
 	boolean execute (String sql);
 	QueryResult executeQuery(String sql) ;
+	QueryResult executeKeysetQuery(String sql, String key) ;
+	void setFetchSize(int fetchSize);
+	PreparedStatement prepareStatement(String sql);
 	void commit();
 	boolean flush();
 }
@@ -3,6 +3,8 @@ package sqlwrapper;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
@@ -19,6 +21,8 @@ public class SqLiteSQLWrapper implements SQLWrapper {
     private String dbPath = null;
 	
 	private Connection conn = null;
+	
+	private int fetchSize = 10000;
     
 	/**
 	 * Single instance created upon class loading.
@@ -71,7 +75,7 @@ public class SqLiteSQLWrapper implements SQLWrapper {
 	}
 
 	/**
-	 * Execute SQL statement for data query
+	 * Execute SQL statement for data query (results are streamed, the query is executed once)
 	 * @param sql Sql operation
 	 * @return queryResult
 	 */
@@ -81,15 +85,67 @@ public class SqLiteSQLWrapper implements SQLWrapper {
 		QueryResult result = null;
 		
 		try {
-			Statement st =sqLiteInstance.conn.createStatement();
-			result = new QueryResult(st, sql);			
+			Statement st =sqLiteInstance.conn.createStatement(
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			result = new QueryResult(st, sql, fetchSize);			
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		
 		return result;
 	}
+	
+	/**
+	 * Execute SQL statement for data query in pages of fetchSize rows, in ascending order 
+	 * of a unique key (only one page is held in the memory at a time)
+	 * @param sql Sql operation without ORDER BY and LIMIT clauses
+	 * @param key Integer column with unique values (e.g., RID)
+	 * @return queryResult
+	 */
+	
+	public QueryResult executeKeysetQuery(String sql, String key) {
 
+		QueryResult result = null;
+		
+		try {
+			Statement st =sqLiteInstance.conn.createStatement(
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			result = new QueryResult(st, sql, key, fetchSize);			
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Set the number of rows fetched from the database at a time by streamed queries 
+	 * (a hint for the driver), and the page size of keyset queries
+	 * @param fetchSize number of rows
+	 */
+	
+	public void setFetchSize(int fetchSize) {
+		if(fetchSize <= 0) {
+			throw new IllegalArgumentException("Fetch size should be positive: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+	}
+
+	/**
+	 * Precompile SQL statement for repeated (or batched) execution
+	 * @param sql Sql operation with '?' as parameter placeholders
+	 * @return preparedStatement (null if the statement cannot be compiled)
+	 */
+	
+	public PreparedStatement prepareStatement(String sql) {
+		try {
+			return sqLiteInstance.conn.prepareStatement(sql);
+		} catch (SQLException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
 	
 	/**
 	 * Commit transaction